@@ -18,7 +18,9 @@
 package colorfill.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
@@ -27,9 +29,16 @@ import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The Board class represents the board (or game problem)
+ * <p>
+ * a Board is immutable after construction, so it can be shared by several threads
+ * (for example several solvers running in parallel) without any locking.
+ * the depth of the color areas depends on the start position; it is computed on demand
+ * for each start position and cached in a concurrent map.
  */
 public class Board {
     /** maximum number of colors supported by the most susceptible solver algorithm */
@@ -42,12 +51,12 @@ public class Board {
     private final int colors;
     private final ColorArea[] cellsColorAreas;
     private final SortedSet<ColorArea> colorAreas;
-    private int startPos = -1; // -1 == none
-    private int depth = -1; // -1 == not yet set
-    private ColorArea[] idsColorAreas;
-    private long[][] idsNeighborColorAreaSets;
-    private int[] idsMemberSize;
-    private int sizeColorAreas8;
+    private final int startPos; // -1 == none
+    private final ConcurrentMap<Integer, int[]> colorAreasDepth = new ConcurrentHashMap<Integer, int[]>();
+    private final ColorArea[] idsColorAreas;
+    private final long[][] idsNeighborColorAreaSets;
+    private final int[] idsMemberSize;
+    private final int sizeColorAreas8;
     private final long[][] casByColorBits;
 
     /**
@@ -59,62 +68,20 @@ public class Board {
      * @param colors
      */
     public Board(final int width, final int height, final int colors) {
-        this.width = width;
-        this.height = height;
-        final int len = width * height;
-        this.colors = colors;
-        this.cells = new byte[len];
-        this.cellsColorAreas = new ColorArea[len];
-        final Random random = new Random();
-        for (int i = 0;  i < this.cells.length;  ++i) {
-            final byte color = (byte)random.nextInt(this.colors);
-            this.cells[i] = color;
-        }
-        this.startPos = this.depth = -1;
-        this.char2Color = new TreeMap<Character, Byte>();
-        this.color2Char = new TreeMap<Byte, Character>();
-        for (final byte cell : this.cells) {
-            // first color 0 is character '1'
-            final Character c = Character.valueOf(Character.forDigit(cell + 1, MAX_NUMBER_OF_COLORS + 1));
-            final Byte b = Byte.valueOf(cell);
-            this.char2Color.put(c, b);
-            this.color2Char.put(b, c);
-        }
-        this.casByColorBits = new long[1 << this.colors][];
-        this.colorAreas = new TreeSet<ColorArea>();
-        this.colorAreas.addAll(this.createColorAreas());
+        this(width, height, colors, -1);
     }
 
     /**
-     * fills <code>this.char2Color</code> and <code>this.color2Char</code> and <code>this.cells</code>.
-     * @throws IllegalArgumentException if there are more than MAX_NUMBER_OF_COLORS distinct character values in <code>str</code>
+     * construct a new Board using the specified parameters and set the start position.
+     * the cells are filled with random color valaues.
+     * 
+     * @param width
+     * @param height
+     * @param colors
+     * @param startPos
      */
-    private void importString(String str) {
-        final int len = str.length();
-        this.char2Color.clear();
-        this.color2Char.clear();
-        for (int i = 0;  i < len;  ++i) {
-            this.char2Color.put(Character.valueOf(str.charAt(i)), null);
-        }
-        if (this.char2Color.size() > MAX_NUMBER_OF_COLORS) {
-            throw new IllegalArgumentException("more than " + MAX_NUMBER_OF_COLORS + " color values found in input string: " + this.char2Color.keySet().toString() + " \"" + str + "\"");
-        }
-        byte b = 0;
-        for (Map.Entry<Character, Byte> entry : this.char2Color.entrySet()) {
-            entry.setValue(Byte.valueOf(b++));
-            this.color2Char.put(entry.getValue(), entry.getKey());
-        }
-        for (int i = 0;  i < len;  ++i) {
-            this.cells[i] = this.char2Color.get(Character.valueOf(str.charAt(i))).byteValue();
-        }
-    }
-
-    public String solutionToString(byte[] steps) {
-        final StringBuilder result = new StringBuilder();
-        for (final byte color : steps) {
-            result.append(this.color2Char.get(Byte.valueOf(color)).charValue());
-        }
-        return result.toString();
+    public Board(final int width, final int height, final int colors, final int startPos) {
+        this(width, height, colors, randomCells(width * height, colors), null, startPos);
     }
 
     /**
@@ -127,24 +94,8 @@ public class Board {
      * 
      * @param str board in text form, any whitespace characters will be ignored
      */
-    public Board(String str) {
-        str = str.replaceAll("\\s", ""); // remove whitespace
-        final int len = str.length();
-        this.cells = new byte[len];
-        this.width = (int)Math.sqrt(len);
-        this.height = this.width;
-        if (this.width * this.height != len) {
-            throw new IllegalArgumentException("length of input String is not a square number: " + len + " \"" + str + "\"");
-        }
-        this.char2Color = new TreeMap<Character, Byte>();
-        this.color2Char = new TreeMap<Byte, Character>();
-        this.importString(str);
-        this.colors = this.char2Color.size();
-        this.cellsColorAreas = new ColorArea[len];
-        this.casByColorBits = new long[1 << this.colors][];
-        this.colorAreas = new TreeSet<ColorArea>();
-        this.colorAreas.addAll(this.createColorAreas());
-        this.startPos = this.depth = -1;
+    public Board(final String str) {
+        this(str, -1);
     }
 
     /**
@@ -153,8 +104,19 @@ public class Board {
      * @param startPos
      */
     public Board(final String str, final int startPos) {
-        this(str);
-        this.determineColorAreasDepth(startPos);
+        this(startPos, removeWhitespace(str));
+    }
+
+    private Board(final int startPos, final String strNoWhitespace) {
+        this(squareWidth(strNoWhitespace), strNoWhitespace, startPos);
+    }
+
+    private Board(final int width, final String str, final int startPos) {
+        this(width, width, importChar2Color(str), str, startPos);
+    }
+
+    private Board(final int width, final int height, final SortedMap<Character, Byte> char2Color, final String str, final int startPos) {
+        this(width, height, char2Color.size(), importCells(str, char2Color), char2Color, startPos);
     }
 
     /**
@@ -168,11 +130,11 @@ public class Board {
      * @param startPos
      */
     public Board(final int width, final int height, final int colors, final String strCells, final int startPos) {
-        this(width, height, colors);
-        this.importString(strCells);
-        this.colorAreas.clear();
-        this.colorAreas.addAll(this.createColorAreas());
-        this.determineColorAreasDepth(startPos);
+        this(width, height, colors, strCells, importChar2Color(strCells), startPos);
+    }
+
+    private Board(final int width, final int height, final int colors, final String strCells, final SortedMap<Character, Byte> char2Color, final int startPos) {
+        this(width, height, colors, importCells(strCells, char2Color), char2Color, startPos);
     }
 
     /**
@@ -182,14 +144,151 @@ public class Board {
      * @return
      */
     public Board(final GameProgress gp) {
-        this(gp.getBoard().getWidth(), gp.getBoard().getHeight(), gp.getBoard().getNumColors());
+        this(gp.getBoard().getWidth(), gp.getBoard().getHeight(), gp.getBoard().getNumColors(),
+                progressCells(gp), gp.getBoard().char2Color, gp.getBoard().getStartPos());
+    }
+
+    /**
+     * the constructor that does the actual work; all other constructors delegate to this one.
+     * @param char2Color mapping of characters to colors, or null to use the digits 1...n for the colors
+     */
+    private Board(final int width, final int height, final int colors, final byte[] cells, final SortedMap<Character, Byte> char2Color, final int startPos) {
+        if (width * height != cells.length) {
+            throw new IllegalArgumentException("w=" + width + " h=" + height + " c=" + cells.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.colors = colors;
+        this.cells = cells;
+        final SortedMap<Character, Byte> c2c = new TreeMap<Character, Byte>();
+        final SortedMap<Byte, Character> col2c = new TreeMap<Byte, Character>();
+        if (null == char2Color) {
+            for (final byte cell : this.cells) {
+                // first color 0 is character '1'
+                c2c.put(Character.valueOf(Character.forDigit(cell + 1, MAX_NUMBER_OF_COLORS + 1)), Byte.valueOf(cell));
+            }
+        } else {
+            c2c.putAll(char2Color);
+        }
+        for (final Map.Entry<Character, Byte> entry : c2c.entrySet()) {
+            col2c.put(entry.getValue(), entry.getKey());
+        }
+        this.char2Color = Collections.unmodifiableSortedMap(c2c);
+        this.color2Char = Collections.unmodifiableSortedMap(col2c);
+        this.cellsColorAreas = new ColorArea[cells.length];
+        final Set<ColorArea> result = this.createColorAreas();
+        // set ID's of ColorAreas and prepare some lookup arrays
+        int id = 0;
+        this.idsColorAreas = new ColorArea[result.size()];
+        this.idsMemberSize = new int[result.size()];
+        this.sizeColorAreas8 = (result.size() + 7) >> 3; // how many bytes are needed to store them as bits?
+        this.casByColorBits = new long[1 << this.colors][];
+        for (int i = 0;  i < this.casByColorBits.length;  ++i) {
+            this.casByColorBits[i] = ColorAreaSet.constructor(this);
+        }
+        for (final ColorArea ca : result) {
+            ca.setId(id++);
+            this.idsColorAreas[ca.getId()] = ca;
+            this.idsMemberSize[ca.getId()] = ca.getMemberSize();
+            ColorAreaSet.add(this.casByColorBits[1 << ca.getColor()], ca);
+        }
+        for (int colorBits = 3;  colorBits < this.casByColorBits.length;  ++colorBits) {
+            if (0 != (colorBits & (colorBits - 1))) { // is not power of two?
+                // several color bits are set
+                final long[] caSet = this.casByColorBits[colorBits];
+                for (int bits = colorBits;  0 != bits;  ) {
+                    final int bit = Integer.lowestOneBit(bits);
+                    bits ^= bit;
+                    ColorAreaSet.addAll(caSet, this.casByColorBits[bit]);
+                }
+            }
+        }
+        for (final ColorArea ca : result) {
+            ca.makeNeighborsArray(this);
+        }
+        this.idsNeighborColorAreaSets = new long[result.size()][];
+        for (final ColorArea ca : result) {
+            this.idsNeighborColorAreaSets[ca.getId()] = ca.getNeighborsColorAreaSet();
+        }
+        this.colorAreas = Collections.unmodifiableSortedSet(new TreeSet<ColorArea>(result));
+        this.startPos = startPos;
+        if (this.startPos >= 0) {
+            this.getColorAreasDepth(this.startPos); // fill the cache
+        }
+    }
+
+    private static byte[] randomCells(final int len, final int colors) {
+        final byte[] result = new byte[len];
+        final Random random = new Random();
+        for (int i = 0;  i < result.length;  ++i) {
+            result[i] = (byte)random.nextInt(colors);
+        }
+        return result;
+    }
+
+    private static byte[] progressCells(final GameProgress gp) {
         final int[] otherCells = gp.getColors();
-        for (int i = 0;  i < this.cells.length;  ++i) {
-            this.cells[i] = (byte)(otherCells[i]);
+        final byte[] result = new byte[otherCells.length];
+        for (int i = 0;  i < result.length;  ++i) {
+            result[i] = (byte)(otherCells[i]);
         }
-        this.colorAreas.clear();
-        this.colorAreas.addAll(this.createColorAreas());
-        this.determineColorAreasDepth(gp.getBoard().getStartPos());
+        return result;
+    }
+
+    private static String removeWhitespace(final String str) {
+        return str.replaceAll("\\s", "");
+    }
+
+    /**
+     * @throws IllegalArgumentException if the length of <code>str</code> is not a square number
+     */
+    private static int squareWidth(final String str) {
+        final int len = str.length();
+        final int width = (int)Math.sqrt(len);
+        if (width * width != len) {
+            throw new IllegalArgumentException("length of input String is not a square number: " + len + " \"" + str + "\"");
+        }
+        return width;
+    }
+
+    /**
+     * create the mapping of the characters in <code>str</code> to color values.
+     * @throws IllegalArgumentException if there are more than MAX_NUMBER_OF_COLORS distinct character values in <code>str</code>
+     */
+    private static SortedMap<Character, Byte> importChar2Color(final String str) {
+        final int len = str.length();
+        final SortedMap<Character, Byte> result = new TreeMap<Character, Byte>();
+        for (int i = 0;  i < len;  ++i) {
+            result.put(Character.valueOf(str.charAt(i)), null);
+        }
+        if (result.size() > MAX_NUMBER_OF_COLORS) {
+            throw new IllegalArgumentException("more than " + MAX_NUMBER_OF_COLORS + " color values found in input string: " + result.keySet().toString() + " \"" + str + "\"");
+        }
+        byte b = 0;
+        for (Map.Entry<Character, Byte> entry : result.entrySet()) {
+            entry.setValue(Byte.valueOf(b++));
+        }
+        return result;
+    }
+
+    /**
+     * convert the characters in <code>str</code> to the color values of the cells.
+     */
+    private static byte[] importCells(final String str, final SortedMap<Character, Byte> char2Color) {
+        final int len = str.length();
+        final byte[] result = new byte[len];
+        for (int i = 0;  i < len;  ++i) {
+            result[i] = char2Color.get(Character.valueOf(str.charAt(i))).byteValue();
+        }
+        return result;
+    }
+
+    public String solutionToString(byte[] steps) {
+        final StringBuilder result = new StringBuilder();
+        for (final byte color : steps) {
+            result.append(this.color2Char.get(Byte.valueOf(color)).charValue());
+        }
+        return result.toString();
     }
 
     private Set<ColorArea> createColorAreas() {
@@ -234,38 +333,6 @@ public class Board {
                 }
             }
         }
-        // set ID's of ColorAreas and prepare some lookup arrays
-        int id = 0;
-        this.idsColorAreas = new ColorArea[result.size()];
-        this.idsMemberSize = new int[result.size()];
-        this.sizeColorAreas8 = (result.size() + 7) >> 3; // how many bytes are needed to store them as bits?
-        for (int i = 0;  i < this.casByColorBits.length;  ++i) {
-            this.casByColorBits[i] = ColorAreaSet.constructor(this);
-        }
-        for (final ColorArea ca : result) {
-            ca.setId(id++);
-            this.idsColorAreas[ca.getId()] = ca;
-            this.idsMemberSize[ca.getId()] = ca.getMemberSize();
-            ColorAreaSet.add(this.casByColorBits[1 << ca.getColor()], ca);
-        }
-        for (int colorBits = 3;  colorBits < this.casByColorBits.length;  ++colorBits) {
-            if (0 != (colorBits & (colorBits - 1))) { // is not power of two?
-                // several color bits are set
-                final long[] caSet = this.casByColorBits[colorBits];
-                for (int bits = colorBits;  0 != bits;  ) {
-                    final int bit = Integer.lowestOneBit(bits);
-                    bits ^= bit;
-                    ColorAreaSet.addAll(caSet, this.casByColorBits[bit]);
-                }
-            }
-        }
-        for (final ColorArea ca : result) {
-            ca.makeNeighborsArray(this);
-        }
-        this.idsNeighborColorAreaSets = new long[result.size()][];
-        for (final ColorArea ca : result) {
-            this.idsNeighborColorAreaSets[ca.getId()] = ca.getNeighborsColorAreaSet();
-        }
         return result;
     }
 
@@ -280,56 +347,30 @@ public class Board {
      */
     public String checkSolution(String str, final int startPos) {
         // parse the solution text
-        str = str.replaceAll("\\s", ""); // remove whitespace
+        str = removeWhitespace(str);
         final int len = str.length();
         final byte[] solution = new byte[len];
         for (int i = 0;  i < len;  ++i) {
             final char c = str.charAt(i);
             solution[i] = this.char2Color.get(Character.valueOf(c)).byteValue();
         }
-        final Set<ColorArea> floodAreas = new TreeSet<ColorArea>();
-        final Set<ColorArea> floodNeighbors = new TreeSet<ColorArea>();
-        int floodColor = 0;
-        // start with the ColorArea that contains cell startPos
-        final ColorArea startCa = this.getColorArea4Cell(startPos);
-        floodColor = startCa.getColor();
-        floodAreas.add(startCa);
-        floodNeighbors.addAll(startCa.getNeighbors());
+        FloodState state = new FloodState(this, startPos);
         // apply all colors from solution
         for (final byte solutionColor : solution) {
-            if (floodColor == solutionColor) {
+            if (state.getColor() == solutionColor) {
                 return "error in solution: duplicate color " + (solutionColor + 1);
             }
-            floodColor = solutionColor;
-            // add all floodNeighbors of matching color to floodAreas
-            final Set<ColorArea> newFloodAreas = new TreeSet<ColorArea>();
-            for (final ColorArea ca : floodNeighbors) {
-                if (ca.getColor() == floodColor) {
-                    newFloodAreas.add(ca);
-                    floodAreas.add(ca);
-                }
-            }
-            if (newFloodAreas.isEmpty()) {
-                return "error in solution: useless color " + (floodColor + 1);
-            }
-            // remove the newly flooded areas from floodNeighbors
-            floodNeighbors.removeAll(newFloodAreas);
-            // add new neighbors to floodNeighbors
-            for (final ColorArea ca : newFloodAreas) {
-                for (final ColorArea caN : ca.getNeighborsArray()) {
-                    if (false == floodAreas.contains(caN)) {
-                        floodNeighbors.add(caN);
-                    }
-                }
+            state = state.play(solutionColor);
+            if (null == state) {
+                return "error in solution: useless color " + (solutionColor + 1);
             }
         }
         // solution finished, check if board is completely flooded
-        if ((floodAreas.size() != this.colorAreas.size()) ||
-                (false == floodAreas.containsAll(this.colorAreas)) ||
-                (false == floodNeighbors.isEmpty())) {
+        if ((state.getFloodedSize() != this.colorAreas.size()) ||
+                (false == state.isFinished())) {
             return "error in solution: board is not completely flooded"
-                    + "\n floodAreas:     " + floodAreas
-                    + "\n floodNeighbors: " + floodNeighbors
+                    + "\n floodAreas:     " + state.getFloodedColorAreas()
+                    + "\n floodNeighbors: " + state.getNeighborColorAreas()
                     ;
         } else {
             return ""; // check OK
@@ -339,25 +380,49 @@ public class Board {
 
     /**
      * starting at startPos, follow the connected neighbors of all color areas
-     * and mark them all with their depth (number of levels from startPos).
+     * and determine their depth (number of levels from startPos).
+     * the result is cached for each startPos, so subsequent calls are cheap.
      * 
      * @param startPos position of the board cell where the color flood starts (0 == top left)
-     * @return maximum depth of all color areas of this board
+     * @return depth of all color areas of this board, indexed by ColorArea ID; shared array, must not be modified!
      */
-    public synchronized int determineColorAreasDepth(final int startPos) {
-        if (this.startPos == startPos) {
-            return this.depth;
+    public int[] getColorAreasDepth(final int startPos) {
+        final Integer key = Integer.valueOf(startPos);
+        int[] result = this.colorAreasDepth.get(key);
+        if (null == result) {
+            result = this.computeColorAreasDepth(startPos);
+            final int[] other = this.colorAreasDepth.putIfAbsent(key, result);
+            if (null != other) {
+                result = other;
+            }
         }
-        // init
-        this.startPos = startPos;
-        for (final ColorArea ca : this.colorAreas) {
-            ca.setDepth(Integer.MAX_VALUE);
+        return result;
+    }
+
+    /**
+     * get the distances between all pairs of color areas,
+     * i.e. the minimum number of moves that are needed to flood one color area, starting at the other one.
+     * the rows are taken from {@link #getColorAreasDepth(int)}, so they are computed only once.
+     * 
+     * @return distances, indexed by [ColorArea ID][ColorArea ID]; shared arrays, must not be modified!
+     */
+    public int[][] getColorAreasDistance() {
+        final int[][] result = new int[this.idsColorAreas.length][];
+        for (final ColorArea ca : this.idsColorAreas) {
+            result[ca.getId()] = this.getColorAreasDepth(ca.getMembers().first().intValue());
         }
-        int depth = 0, result = 0;
+        return result;
+    }
+
+    private int[] computeColorAreasDepth(final int startPos) {
+        // init
+        final int[] result = new int[this.idsColorAreas.length];
+        Arrays.fill(result, Integer.MAX_VALUE);
+        int depth = 0;
         Collection<ColorArea> nextLevel = new ArrayList<ColorArea>();
         // find the ColorArea that contains cell startPos
         final ColorArea startCa = this.getColorArea4Cell(startPos);
-        startCa.setDepth(depth);
+        result[startCa.getId()] = depth;
         nextLevel.addAll(startCa.getNeighbors());
         // visit all ColorAreas and mark them with their depth
         while (false == nextLevel.isEmpty()) {
@@ -365,25 +430,25 @@ public class Board {
             final Collection<ColorArea> thisLevel = nextLevel;
             nextLevel = new ArrayList<ColorArea>();
             for (final ColorArea ca : thisLevel) {
-                if (ca.getDepth() > depth) {
-                    ca.setDepth(depth);
+                if (result[ca.getId()] > depth) {
+                    result[ca.getId()] = depth;
                     nextLevel.addAll(ca.getNeighbors());
-                    result = depth;
                 }
             }
         }
-        this.depth = result;
         return result;
     }
 
 
     public String toStringColorDepth(final int startPos) {
-        final int maxDepth = this.determineColorAreasDepth(startPos);
+        final int maxDepth = this.getDepth(startPos);
+        final int[] depths = this.getColorAreasDepth(startPos);
         final StringBuilder sb = new StringBuilder();
         for (int i = 0;  i < this.cellsColorAreas.length;  ++i) {
             final ColorArea ca = this.cellsColorAreas[i];
-            sb.append(ca.getColorChar()).append('_').append(ca.getDepth());
-            if (10 > ca.getDepth()) {
+            final int depth = depths[ca.getId()];
+            sb.append(ca.getColorChar()).append('_').append(depth);
+            if (10 > depth) {
                 sb.append(' ');
             }
             if (0 == (i + 1) % width) {
@@ -451,12 +516,20 @@ public class Board {
         return this.cells[cell];
     }
 
-    public synchronized int getStartPos() {
+    public int getStartPos() {
         return this.startPos;
     }
 
+    /**
+     * @param startPos position of the board cell where the color flood starts (0 == top left)
+     * @return maximum depth of all color areas of this board
+     */
     public int getDepth(int startPos) {
-        return this.determineColorAreasDepth(startPos);
+        int result = 0;
+        for (final int depth : this.getColorAreasDepth(startPos)) {
+            result = Math.max(result, depth);
+        }
+        return result;
     }
 
     public int getNumColors() {
@@ -34,7 +34,6 @@ public class ColorArea implements Comparable<ColorArea> {
     private final SortedSet<ColorArea> neighborsUnmodifiable = Collections.unmodifiableSortedSet(this.neighbors);
     private ColorArea[]  neighborsArray = null; // will be created by makeNeighborsArray()
     private long[] neighborsCaSet = null;       // will be created by makeNeighborsArray()
-    private int depth = 0;
 
     protected ColorArea(final byte color, final Character colorChar) {
         this.color = color;
@@ -133,13 +132,6 @@ public class ColorArea implements Comparable<ColorArea> {
         return this.neighborsCaSet;
     }
 
-    public int getDepth() {
-        return this.depth;
-    }
-    public void setDepth(int depth) {
-        this.depth = depth;
-    }
-
     public int getId() {
         return this.id;
     }
@@ -39,7 +39,14 @@ public final class ColorAreaSet {
      * the constructor
      */
     public static long[] constructor(final Board board) {
-        return new long[(board.getSizeColorAreas8() + 7) >> 3];
+        return new long[arrayLength(board)];
+    }
+
+    /**
+     * the length of the internal array of the ColorAreaSets of this board
+     */
+    public static int arrayLength(final Board board) {
+        return (board.getSizeColorAreas8() + 7) >> 3;
     }
 
     /**
@@ -80,6 +87,22 @@ public final class ColorAreaSet {
         casThis[i] |= 1L << caId;       // implicit shift distance (caId & 0x3f)
     }
 
+    /**
+     * remove the ColorArea from this set
+     */
+    public static void remove(final long[] casThis, final int caId) {
+        final int i = caId >>> 6;       // index is always >= 0
+        casThis[i] &= ~(1L << caId);    // implicit shift distance (caId & 0x3f)
+    }
+
+    /**
+     * return true if the ColorArea is in this set
+     */
+    public static boolean contains(final long[] casThis, final int caId) {
+        final long bit = casThis[caId >>> 6] & (1L << caId); // index is always >= 0; implicit shift distance (caId & 0x3f)
+        return 0 != bit;
+    }
+
     /**
      * return true if the ColorArea is in this set
      */
@@ -152,6 +175,17 @@ public final class ColorAreaSet {
         return size;
     }
 
+    /**
+     * return the number of ColorAreas that are contained in this set and in the other set
+     */
+    public static int sizeAnd(final long[] casThis, final long[] casOther) {
+        int size = 0;
+        for (int i = 0;  i < casThis.length;  ++i) {
+            size += Long.bitCount(casThis[i] & casOther[i]);
+        }
+        return size;
+    }
+
     /**
      * return true is this set is empty
      */
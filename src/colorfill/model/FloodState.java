@@ -0,0 +1,261 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.model;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * FloodState represents the state of a game in progress: the flooded area,
+ * its neighbor areas and the current flood color.
+ * <p>
+ * objects of this class are immutable. the transition from one state to the next
+ * is described by a {@link Delta}, which contains just the color areas that have changed
+ * in this step. a list of Delta objects can be used as an undo log, it allows to
+ * move forward ({@link #apply(Delta)}) and backward ({@link #revert(Delta)}) in the game
+ * without storing a complete snapshot of each step.
+ * <p>
+ * the sets are stored as bitsets, see {@link ColorAreaSet}.
+ */
+public final class FloodState {
+
+    private final Board board;
+    private final long[] flooded;
+    private final long[] neighbors;
+    private final int color;
+
+    /**
+     * the changes made by one step.
+     */
+    public static final class Delta {
+        private final int previousColor;
+        private final int color;
+        private final int[] newFlooded;   // IDs of color areas that are flooded in this step
+        private final int[] newNeighbors; // IDs of color areas that become new neighbors in this step
+
+        private Delta(final int previousColor, final int color, final int[] newFlooded, final int[] newNeighbors) {
+            this.previousColor = previousColor;
+            this.color = color;
+            this.newFlooded = newFlooded;
+            this.newNeighbors = newNeighbors;
+        }
+
+        /**
+         * @return the color played in this step
+         */
+        public int getColor() {
+            return this.color;
+        }
+
+        /**
+         * @return the number of color areas flooded in this step
+         */
+        public int getNumFlooded() {
+            return this.newFlooded.length;
+        }
+    }
+
+    /**
+     * construct the initial state: only the color area at startPos is flooded.
+     * @param board
+     * @param startPos position of the board cell where the color flood starts (0 == top left)
+     */
+    public FloodState(final Board board, final int startPos) {
+        final ColorArea startCa = board.getColorArea4Cell(startPos);
+        this.board = board;
+        this.flooded = ColorAreaSet.constructor(board);
+        ColorAreaSet.add(this.flooded, startCa);
+        this.neighbors = ColorAreaSet.constructor(startCa.getNeighborsColorAreaSet());
+        this.color = startCa.getColor();
+    }
+
+    private FloodState(final Board board, final long[] flooded, final long[] neighbors, final int color) {
+        this.board = board;
+        this.flooded = flooded;
+        this.neighbors = neighbors;
+        this.color = color;
+    }
+
+    /**
+     * determine the changes that playing this color would make.
+     * @param nextColor the color to be played
+     * @return the changes, or null if the color can't be played
+     *         (same color as current flood color, or no neighbor areas of this color)
+     */
+    public Delta delta(final int nextColor) {
+        if ((nextColor == this.color) || (nextColor < 0) || (nextColor >= this.board.getNumColors())) {
+            return null;
+        }
+        final long[] casColor = this.board.getCasByColorBitsArray()[1 << nextColor];
+        if (false == ColorAreaSet.intersects(this.neighbors, casColor)) {
+            return null;
+        }
+        final long[] casNewFlooded = ColorAreaSet.constructor(this.board);
+        final long[] casNewNeighbors = ColorAreaSet.constructor(this.board);
+        for (int i = 0;  i < casNewFlooded.length;  ++i) {
+            casNewFlooded[i] = this.neighbors[i] & casColor[i];
+        }
+        ColorAreaSet.addAllLookup(casNewNeighbors, casNewFlooded, this.board.getNeighborColorAreaSet4IdArray());
+        ColorAreaSet.removeAll(casNewNeighbors, this.flooded);
+        ColorAreaSet.removeAll(casNewNeighbors, this.neighbors);
+        return new Delta(this.color, nextColor, toIds(casNewFlooded), toIds(casNewNeighbors));
+    }
+
+    /**
+     * play this color.
+     * @param nextColor the color to be played
+     * @return the next state, or null if the color can't be played
+     */
+    public FloodState play(final int nextColor) {
+        final Delta delta = this.delta(nextColor);
+        return (null == delta ? null : this.apply(delta));
+    }
+
+    /**
+     * apply the changes to this state. (forward step, redo)
+     * @param delta must have been created by {@link #delta(int)} of an equal state
+     * @return the next state
+     */
+    public FloodState apply(final Delta delta) {
+        final long[] nextFlooded = ColorAreaSet.constructor(this.flooded);
+        final long[] nextNeighbors = ColorAreaSet.constructor(this.neighbors);
+        for (final int caId : delta.newFlooded) {
+            ColorAreaSet.add(nextFlooded, caId);
+            ColorAreaSet.remove(nextNeighbors, caId);
+        }
+        for (final int caId : delta.newNeighbors) {
+            ColorAreaSet.add(nextNeighbors, caId);
+        }
+        return new FloodState(this.board, nextFlooded, nextNeighbors, delta.color);
+    }
+
+    /**
+     * revert the changes from this state. (backward step, undo)
+     * @param delta must be the Delta that was applied to reach this state
+     * @return the previous state
+     */
+    public FloodState revert(final Delta delta) {
+        final long[] prevFlooded = ColorAreaSet.constructor(this.flooded);
+        final long[] prevNeighbors = ColorAreaSet.constructor(this.neighbors);
+        for (final int caId : delta.newNeighbors) {
+            ColorAreaSet.remove(prevNeighbors, caId);
+        }
+        for (final int caId : delta.newFlooded) {
+            ColorAreaSet.remove(prevFlooded, caId);
+            ColorAreaSet.add(prevNeighbors, caId);
+        }
+        return new FloodState(this.board, prevFlooded, prevNeighbors, delta.previousColor);
+    }
+
+    private static int[] toIds(final long[] cas) {
+        final int[] result = new int[ColorAreaSet.size(cas)];
+        final ColorAreaSet.Iterator iter = new ColorAreaSet.Iterator();
+        iter.init(cas);
+        for (int i = 0, caId;  (caId = iter.nextOrNegative()) >= 0;  ++i) {
+            result[i] = caId;
+        }
+        return result;
+    }
+
+    /**
+     * @return the current flood color
+     */
+    public int getColor() {
+        return this.color;
+    }
+
+    /**
+     * @return true if the color area is flooded
+     */
+    public boolean isFlooded(final ColorArea ca) {
+        return ColorAreaSet.contains(this.flooded, ca);
+    }
+
+    /**
+     * @return true if the color area is a neighbor of the flooded area
+     */
+    public boolean isNeighbor(final ColorArea ca) {
+        return ColorAreaSet.contains(this.neighbors, ca);
+    }
+
+    /**
+     * @return true if no color areas are left to be flooded
+     */
+    public boolean isFinished() {
+        return ColorAreaSet.isEmpty(this.neighbors);
+    }
+
+    /**
+     * is the specified color completed if it is played next?
+     * (i.e. are all color areas of this color either flooded or neighbors)
+     * @param nextColor the color
+     * @return true if the color will be flooded completely
+     */
+    public boolean isCompletedByNext(final int nextColor) {
+        final long[] casColor = this.board.getCasByColorBitsArray()[1 << nextColor];
+        for (int i = 0;  i < casColor.length;  ++i) {
+            if ((casColor[i] & (this.flooded[i] | this.neighbors[i])) != casColor[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of flooded color areas
+     */
+    public int getFloodedSize() {
+        return ColorAreaSet.size(this.flooded);
+    }
+
+    /**
+     * @return a copy of the set of flooded color areas
+     */
+    public long[] getFlooded() {
+        return ColorAreaSet.constructor(this.flooded);
+    }
+
+    /**
+     * @return a copy of the set of neighbor color areas
+     */
+    public long[] getNeighbors() {
+        return ColorAreaSet.constructor(this.neighbors);
+    }
+
+    /**
+     * @return the flooded color areas, as a sorted set of objects
+     */
+    public SortedSet<ColorArea> getFloodedColorAreas() {
+        return this.toColorAreas(this.flooded);
+    }
+
+    /**
+     * @return the neighbor color areas, as a sorted set of objects
+     */
+    public SortedSet<ColorArea> getNeighborColorAreas() {
+        return this.toColorAreas(this.neighbors);
+    }
+
+    private SortedSet<ColorArea> toColorAreas(final long[] cas) {
+        final SortedSet<ColorArea> result = new TreeSet<ColorArea>();
+        for (final int caId : toIds(cas)) {
+            result.add(this.board.getColorArea4Id(caId));
+        }
+        return result;
+    }
+}
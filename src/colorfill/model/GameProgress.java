@@ -20,9 +20,7 @@ package colorfill.model;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import colorfill.solver.Solution;
 
@@ -35,8 +33,8 @@ public class GameProgress {
 
     private int numSteps;
     private final List<Integer> stepColor = new ArrayList<Integer>();
-    private final List<HashSet<ColorArea>> stepFlooded = new ArrayList<HashSet<ColorArea>>();
-    private final List<HashSet<ColorArea>> stepFloodNext = new ArrayList<HashSet<ColorArea>>();
+    private final List<FloodState.Delta> stepDelta = new ArrayList<FloodState.Delta>(); // undo log
+    private FloodState state; // state at current step numSteps
 
     /**
      * construct a "user progress" object.
@@ -63,7 +61,7 @@ public class GameProgress {
         for (final byte color : solution.getSteps()) {
             this.addStep(color, true);
         }
-        this.numSteps = 0;
+        this.gotoStep(0);
     }
 
     /**
@@ -79,7 +77,7 @@ public class GameProgress {
             for (final char c : strStepColors.toCharArray()) {
                 this.addStep(Integer.parseInt(String.valueOf(c)) - 1, true);
             }
-            this.numSteps = step;
+            this.gotoStep(step);
         }
     }
 
@@ -87,10 +85,21 @@ public class GameProgress {
         this.numSteps = 0;
         this.stepColor.clear();
         this.stepColor.add(Integer.valueOf(this.board.getColor(startPos)));
-        this.stepFlooded.clear();
-        this.stepFlooded.add(new HashSet<ColorArea>(Collections.singleton(this.board.getColorArea4Cell(startPos))));
-        this.stepFloodNext.clear();
-        this.stepFloodNext.add(new HashSet<ColorArea>(this.board.getColorArea4Cell(startPos).getNeighbors()));
+        this.stepDelta.clear();
+        this.state = new FloodState(this.board, startPos);
+    }
+
+    /**
+     * move forward or backward in the undo log until the specified step is reached.
+     * @param step
+     */
+    private void gotoStep(final int step) {
+        while ((this.numSteps > step) && (this.numSteps > 0)) {
+            this.state = this.state.revert(this.stepDelta.get(--this.numSteps));
+        }
+        while ((this.numSteps < step) && (this.numSteps < this.stepDelta.size())) {
+            this.state = this.state.apply(this.stepDelta.get(this.numSteps++));
+        }
     }
 
     /**
@@ -113,44 +122,23 @@ public class GameProgress {
         final Integer col = Integer.valueOf(color);
         // check if same color as before or nothing to be flooded
         if (this.stepColor.get(this.numSteps).equals(col)
-                || this.stepFloodNext.get(this.numSteps).isEmpty()) {
+                || this.state.isFinished()) {
             return false;
         }
         // determine new flooded area
-        final Set<ColorArea> newFlood = new HashSet<ColorArea>();
-        for (final ColorArea ca : this.stepFloodNext.get(this.numSteps)) {
-            if (ca.getColor() == color) {
-                newFlood.add(ca);
-            }
-        }
-        if (newFlood.isEmpty()) {
+        final FloodState.Delta delta = this.state.delta(color);
+        if (null == delta) {
             return false; // this color is not a flood neighbor
         }
         // current lists are too long (because of undo) - remove the future moves
         if (this.stepColor.size() > this.numSteps + 1) {
             this.stepColor.subList(this.numSteps + 1, this.stepColor.size()).clear();
-            this.stepFlooded.subList(this.numSteps + 1, this.stepFlooded.size()).clear();
-            this.stepFloodNext.subList(this.numSteps + 1, this.stepFloodNext.size()).clear();
+            this.stepDelta.subList(this.numSteps, this.stepDelta.size()).clear();
         }
-        // add stepColor
+        // add stepColor and stepDelta
         this.stepColor.add(col);
-        // add stepFlooded
-        @SuppressWarnings("unchecked")
-        final HashSet<ColorArea> flooded = (HashSet<ColorArea>) this.stepFlooded.get(this.numSteps).clone();
-        flooded.addAll(newFlood);
-        this.stepFlooded.add(flooded);
-        // add stepFloodNext
-        @SuppressWarnings("unchecked")
-        final HashSet<ColorArea> floodNext = (HashSet<ColorArea>) this.stepFloodNext.get(this.numSteps).clone();
-        floodNext.removeAll(newFlood);
-        for (final ColorArea ca : newFlood) {
-            for (final ColorArea caN : ca.getNeighborsArray()) {
-                if (false == flooded.contains(caN)) {
-                    floodNext.add(caN);
-                }
-            }
-        }
-        this.stepFloodNext.add(floodNext);
+        this.stepDelta.add(delta);
+        this.state = this.state.apply(delta);
         // next step
         ++ this.numSteps;
         if ((true == this.isModifiable) && (false == init)) { // user added step
@@ -167,15 +155,12 @@ public class GameProgress {
      */
     public int[] getColors() {
         final int[] result = new int[this.board.getSize()];
-        final Set<ColorArea> flooded = this.stepFlooded.get(this.numSteps);
-        final int floodColor = this.stepColor.get(this.numSteps).intValue();
+        final int floodColor = this.state.getColor();
         for (int i = 0;  i < result.length;  ++i) {
-            result[i] = this.board.getColor(i);
-            for (final ColorArea ca : flooded) {
-                if (ca.containsMember(i)) {
-                    result[i] = floodColor;
-                    break; // for (ca)
-                }
+            if (this.state.isFlooded(this.board.getColorArea4Cell(i))) {
+                result[i] = floodColor;
+            } else {
+                result[i] = this.board.getColor(i);
             }
         }
         return result;
@@ -195,7 +180,7 @@ public class GameProgress {
      */
     public boolean undoStep() {
         if (this.canUndoStep()) {
-            -- this.numSteps;
+            this.gotoStep(this.numSteps - 1);
             if (true == this.isModifiable) { // user solution
                 GamePreferences.saveSolution(this);
             }
@@ -218,7 +203,7 @@ public class GameProgress {
      */
     public boolean redoStep() {
         if (this.canRedoStep()) {
-            ++ this.numSteps;
+            this.gotoStep(this.numSteps + 1);
             if (true == this.isModifiable) { // user solution
                 GamePreferences.saveSolution(this);
             }
@@ -234,12 +219,7 @@ public class GameProgress {
      * @return true if cell can be flooded in the next step
      */
     public boolean isFloodNeighborCell(int index) {
-        for (final ColorArea ca : this.stepFloodNext.get(this.numSteps)) {
-            if (ca.containsMember(index)) {
-                return true;
-            }
-        }
-        return false;
+        return this.state.isNeighbor(this.board.getColorArea4Cell(index));
     }
 
     /**
@@ -250,8 +230,8 @@ public class GameProgress {
      */
     public Collection<Integer> getFloodNeighborCells(final int color) {
         final ArrayList<Integer> result = new ArrayList<Integer>();
-        for (final ColorArea ca : this.stepFloodNext.get(this.numSteps)) {
-            if (ca.getColor() == color) {
+        for (final ColorArea ca : this.board.getColorAreasArray()) {
+            if ((ca.getColor() == color) && this.state.isNeighbor(ca)) {
                 result.addAll(ca.getMembers());
             }
         }
@@ -265,18 +245,7 @@ public class GameProgress {
      * @return true if the color will be flooded completely
      */
     public boolean isFloodNeighborCellsCompleted(final int color) {
-        boolean result = true;
-        final HashSet<ColorArea> flooded = this.stepFlooded.get(this.numSteps);
-        final HashSet<ColorArea> floodNext = this.stepFloodNext.get(this.numSteps);
-        for (final ColorArea ca : this.board.getColorAreas()) {
-            if (ca.getColor() == color) {
-                if (!flooded.contains(ca) && !floodNext.contains(ca)) {
-                    result = false;
-                    break;
-                }
-            }
-        }
-        return result;
+        return this.state.isCompletedByNext(color);
     }
 
     /**
@@ -302,8 +271,10 @@ public class GameProgress {
      */
     public Collection<Integer> getFloodNeighborCells() {
         final ArrayList<Integer> result = new ArrayList<Integer>();
-        for (final ColorArea ca : this.stepFloodNext.get(this.numSteps)) {
-            result.addAll(ca.getMembers());
+        for (final ColorArea ca : this.board.getColorAreasArray()) {
+            if (this.state.isNeighbor(ca)) {
+                result.addAll(ca.getMembers());
+            }
         }
         return result;
     }
@@ -314,8 +285,8 @@ public class GameProgress {
      */
     public Collection<Integer> getNonFloodedCells() {
         final ArrayList<Integer> result = new ArrayList<Integer>();
-        for (final ColorArea ca : this.board.getColorAreas()) {
-            if (false == this.stepFlooded.get(this.numSteps).contains(ca)) {
+        for (final ColorArea ca : this.board.getColorAreasArray()) {
+            if (false == this.state.isFlooded(ca)) {
                 result.addAll(ca.getMembers());
             }
         }
@@ -343,7 +314,7 @@ public class GameProgress {
      * @return true if there are no steps left to do
      */
     public boolean isFinished() {
-        return this.stepFloodNext.get(this.numSteps).isEmpty();
+        return this.state.isFinished();
     }
 
     /**
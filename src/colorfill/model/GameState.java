@@ -42,6 +42,7 @@ import colorfill.solver.DfsDeeperStrategy;
 import colorfill.solver.DfsExhaustiveStrategy;
 import colorfill.solver.DfsGreedyNextStrategy;
 import colorfill.solver.DfsGreedyStrategy;
+import colorfill.solver.DfsSolver;
 import colorfill.solver.Solution;
 import colorfill.solver.Solver;
 import colorfill.solver.Strategy;
@@ -106,9 +107,8 @@ public class GameState {
             this.startPos = this.board.getStartPos();
             this.progressUser = GamePreferences.loadSolution(this.board, this.startPos);
         } else { // board not loaded
-            this.board = new Board(this.pref.getWidth(), this.pref.getHeight(), this.pref.getNumColors());
             this.startPos = this.pref.getStartPos(this.pref.getWidth(), this.pref.getHeight());
-            this.board.determineColorAreasDepth(this.startPos);
+            this.board = new Board(this.pref.getWidth(), this.pref.getHeight(), this.pref.getNumColors(), this.startPos);
             GamePreferences.saveBoard(this.board);
         }
         if (null == this.progressUser) { // solution not loaded
@@ -245,6 +245,11 @@ public class GameState {
                     }));
                 } else {
                     final Solver solver = AbstractSolver.createSolver((Class<Strategy>)STRATEGIES[strategyIdx], this.board);
+                    if (DfsDeepStrategy.class.equals(STRATEGIES[strategyIdx]) || DfsDeeperStrategy.class.equals(STRATEGIES[strategyIdx])) {
+                        // the solvers run concurrently in this executor, so only the slow ones use the other processors too
+                        ((DfsSolver)solver).setParallel(Runtime.getRuntime().availableProcessors() > 1);
+                        ((DfsSolver)solver).setTranspositionTable(true); // skip the states that have been searched already
+                    }
                     futureSolutions.add(executor.submit(new Callable<Solution>() {
                         public Solution call() throws Exception {
                             try {
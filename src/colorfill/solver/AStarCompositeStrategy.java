@@ -0,0 +1,320 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import colorfill.model.Board;
+
+/**
+ * a strategy for the AStar (A*) solver that is composed of other AStar strategies.
+ * <p>
+ * the composition is configured by a simple expression, for example:<br>
+ * <code>max(AStarDistanceStrategy, weighted(1.5, AStarFlolleStrategy))</code>
+ * <ul>
+ * <li><code>AStarPuchertStrategy</code> - the name of any AStarStrategy class in this package
+ * <li><code>max(a, b, ...)</code> - the maximum of the estimations.
+ * the parts are evaluated in the given order (so the cheap ones should be first),
+ * and the evaluation stops as soon as the maximum is greater than the cost limit given by the solver.
+ * <li><code>weighted(w, a)</code> - the estimation multiplied by w (not admissible if w &gt; 1)
+ * </ul>
+ * the number of calls and the time used are counted for each part, see {@link #getInfo()}.
+ * <p>
+ * the expression is given to the solver, see {@link AStarSolver#setCompositeSpec(String)}.
+ * <p>
+ * note that the cost limit is given only in the partial expansion, layered and external memory
+ * modes of {@link AStarSolver}. in its default mode there is no limit, so all parts of
+ * <code>max(...)</code> are always evaluated, and the order doesn't matter.
+ */
+public class AStarCompositeStrategy implements AStarStrategy {
+
+    private final String spec;
+    private final Part root;
+
+    /**
+     * constructor
+     * @param board
+     * @param spec the expression of the composition
+     */
+    public AStarCompositeStrategy(final Board board, final String spec) {
+        this.spec = spec;
+        final Parser parser = new Parser(board, spec);
+        this.root = parser.parseExpression();
+        parser.expectEnd();
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.AStarStrategy#setEstimatedCost(colorfill.solver.AStarNode, int)
+     */
+    @Override
+    public void setEstimatedCost(final AStarNode node, final int nonCompletedColors) {
+        this.root.setEstimatedCost(node, nonCompletedColors, Integer.MAX_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.AStarStrategy#setEstimatedCost(colorfill.solver.AStarNode, int, int)
+     */
+    @Override
+    public void setEstimatedCost(final AStarNode node, final int nonCompletedColors, final int maxCost) {
+        this.root.setEstimatedCost(node, nonCompletedColors, maxCost);
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.AStarStrategy#getInfo()
+     */
+    @Override
+    public String getInfo() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(this.spec);
+        this.root.appendInfo(sb);
+        return sb.toString();
+    }
+
+
+    /**
+     * a part of the composition.
+     */
+    private static abstract class Part implements AStarStrategy {
+        @Override
+        public void setEstimatedCost(final AStarNode node, final int nonCompletedColors) {
+            this.setEstimatedCost(node, nonCompletedColors, Integer.MAX_VALUE);
+        }
+        @Override
+        public String getInfo() {
+            final StringBuilder sb = new StringBuilder();
+            this.appendInfo(sb);
+            return sb.toString();
+        }
+        protected abstract void appendInfo(StringBuilder sb);
+    }
+
+    /**
+     * an AStarStrategy, with counters.
+     */
+    private static class Leaf extends Part {
+        private final String name;
+        private final AStarStrategy strategy;
+        private long numCalls, numPending, nanos;
+
+        private Leaf(final String name, final AStarStrategy strategy) {
+            this.name = name;
+            this.strategy = strategy;
+        }
+
+        @Override
+        public void setEstimatedCost(final AStarNode node, final int nonCompletedColors, final int maxCost) {
+            final long nanoStart = System.nanoTime();
+            this.strategy.setEstimatedCost(node, nonCompletedColors, maxCost);
+            this.nanos += System.nanoTime() - nanoStart;
+            ++this.numCalls;
+            if (node.isEstimatePending()) {
+                ++this.numPending;
+            }
+        }
+
+        @Override
+        protected void appendInfo(final StringBuilder sb) {
+            sb.append("\n  ").append(this.name)
+                .append(" calls=").append(this.numCalls)
+                .append(" lowerBoundOnly=").append(this.numPending)
+                .append(" milliSeconds=").append(this.nanos / 1000000L)
+                .append(" nanoSecondsPerCall=").append(this.numCalls == 0 ? 0 : this.nanos / this.numCalls);
+            final String info = this.strategy.getInfo();
+            if ((null != info) && (false == info.isEmpty())) {
+                sb.append(' ').append(info);
+            }
+        }
+    }
+
+    /**
+     * maximum of the parts, evaluated in order, cheap ones first.
+     */
+    private static class Max extends Part {
+        private final Part[] parts;
+        private final long[] numCutoffs; // number of times that the evaluation stopped after this part
+
+        private Max(final List<Part> parts) {
+            this.parts = parts.toArray(new Part[parts.size()]);
+            this.numCutoffs = new long[this.parts.length];
+        }
+
+        @Override
+        public void setEstimatedCost(final AStarNode node, final int nonCompletedColors, final int maxCost) {
+            int cost = 0;
+            for (int i = 0;  i < this.parts.length;  ++i) {
+                this.parts[i].setEstimatedCost(node, nonCompletedColors, maxCost);
+                cost = Math.max(cost, node.getEstimatedCost());
+                if (cost > maxCost) {
+                    // the remaining parts can't change the result "greater than maxCost"
+                    ++this.numCutoffs[i];
+                    break;
+                }
+            }
+            if (cost > maxCost) {
+                node.setEstimatedCostPending(cost); // may be a lower bound only
+            } else {
+                node.setEstimatedCost(cost);
+            }
+        }
+
+        @Override
+        protected void appendInfo(final StringBuilder sb) {
+            sb.append("\n  max cutoffs=");
+            for (int i = 0;  i < this.numCutoffs.length;  ++i) {
+                sb.append(0 == i ? "" : "/").append(this.numCutoffs[i]);
+            }
+            for (final Part part : this.parts) {
+                part.appendInfo(sb);
+            }
+        }
+    }
+
+    /**
+     * the estimation of the part, multiplied by a weight.
+     */
+    private static class Weighted extends Part {
+        private final double weight;
+        private final Part part;
+
+        private Weighted(final double weight, final Part part) {
+            this.weight = weight;
+            this.part = part;
+        }
+
+        @Override
+        public void setEstimatedCost(final AStarNode node, final int nonCompletedColors, final int maxCost) {
+            final int solutionSize = node.getSolutionSize();
+            final int partMaxCost = (Integer.MAX_VALUE == maxCost ? maxCost : solutionSize + (int)((maxCost - solutionSize) / this.weight));
+            this.part.setEstimatedCost(node, nonCompletedColors, partMaxCost);
+            final boolean isPending = node.isEstimatePending();
+            final int cost = Math.min(AStarNode.MAX_VALUE,
+                    solutionSize + (int)((node.getEstimatedCost() - solutionSize) * this.weight));
+            if (isPending || (cost > maxCost)) {
+                node.setEstimatedCostPending(cost);
+            } else {
+                node.setEstimatedCost(cost);
+            }
+        }
+
+        @Override
+        protected void appendInfo(final StringBuilder sb) {
+            this.part.appendInfo(sb);
+        }
+    }
+
+
+    /**
+     * a simple recursive descent parser of the expression.
+     */
+    private static class Parser {
+        private final Board board;
+        private final String spec;
+        private int pos = 0;
+
+        private Parser(final Board board, final String spec) {
+            this.board = board;
+            this.spec = spec;
+        }
+
+        private Part parseExpression() {
+            final String name = this.parseName();
+            if ("max".equals(name)) {
+                this.expect('(');
+                final List<Part> parts = new ArrayList<Part>();
+                do {
+                    parts.add(this.parseExpression());
+                } while (this.accept(','));
+                this.expect(')');
+                return new Max(parts);
+            } else if ("weighted".equals(name)) {
+                this.expect('(');
+                final String weight = this.parseName();
+                this.expect(',');
+                final Part part = this.parseExpression();
+                this.expect(')');
+                try {
+                    return new Weighted(Double.parseDouble(weight), part);
+                } catch (NumberFormatException e) {
+                    throw this.error("weight is not a number: " + weight);
+                }
+            } else {
+                return new Leaf(name, this.makeStrategy(name));
+            }
+        }
+
+        private AStarStrategy makeStrategy(final String name) {
+            final Class<?> strategyClass;
+            try {
+                strategyClass = Class.forName(AStarStrategy.class.getPackage().getName() + "." + name);
+            } catch (ClassNotFoundException e) {
+                throw this.error("unknown strategy " + name);
+            }
+            if ((false == AStarStrategy.class.isAssignableFrom(strategyClass))
+                    || AStarCompositeStrategy.class.equals(strategyClass)) {
+                throw this.error("unsupported strategy class " + strategyClass.getName());
+            }
+            return AStarSolver.makeStrategy(strategyClass.asSubclass(AStarStrategy.class), this.board);
+        }
+
+        private String parseName() {
+            this.skipSpace();
+            final int start = this.pos;
+            while ((this.pos < this.spec.length())
+                    && (Character.isLetterOrDigit(this.spec.charAt(this.pos)) || ('.' == this.spec.charAt(this.pos)))) {
+                ++this.pos;
+            }
+            if (start == this.pos) {
+                throw this.error("name expected");
+            }
+            return this.spec.substring(start, this.pos);
+        }
+
+        private boolean accept(final char c) {
+            this.skipSpace();
+            if ((this.pos < this.spec.length()) && (c == this.spec.charAt(this.pos))) {
+                ++this.pos;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(final char c) {
+            if (false == this.accept(c)) {
+                throw this.error("'" + c + "' expected");
+            }
+        }
+
+        private void expectEnd() {
+            this.skipSpace();
+            if (this.pos < this.spec.length()) {
+                throw this.error("end expected");
+            }
+        }
+
+        private void skipSpace() {
+            while ((this.pos < this.spec.length()) && Character.isWhitespace(this.spec.charAt(this.pos))) {
+                ++this.pos;
+            }
+        }
+
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException("invalid strategy expression \"" + this.spec + "\" at position " + this.pos + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import java.util.Arrays;
+
+import colorfill.model.Board;
+import colorfill.model.ColorAreaSet;
+
+/**
+ * a specific strategy for the AStar (A*) solver.
+ * <p>
+ * it puts two cheap admissible lower bounds in front of the admissible heuristic
+ * of {@link AStarPuchertStrategy}:
+ * <ul>
+ * <li>each color that is not completed yet needs at least one more move.
+ * <li>each color area needs at least as many moves as its distance from the flooded color areas.
+ * </ul>
+ * the expensive Puchert heuristic is skipped if the cheap bounds alone
+ * show that the estimated cost is greater than the given maximum.
+ * otherwise the Puchert heuristic is used; it is never less than the cheap bounds,
+ * because it's based on the same color-blind expansion and on the completion of all colors.
+ * so the estimation is the maximum of the three bounds, like
+ * <code>max(colors, distance, AStarPuchertStrategy)</code> in {@link AStarCompositeStrategy}.
+ * <p>
+ * the cheap bounds are useful only if the solver gives a maximum cost, i.e. in the
+ * partial expansion, layered and external memory modes of {@link AStarSolver}.
+ * in the default mode this strategy is the same as AStarPuchertStrategy, so it's opt-in only.
+ */
+public class AStarDistanceStrategy extends AStarPuchertStrategy {
+
+    private static final int NUM_CANDIDATES = 4; // number of remote color areas checked by the distance bound  CONFIGURE THIS
+
+    private final int[][] distances;
+    private final int[] idsRemote; // ColorArea IDs, sorted by eccentricity (largest first)
+
+    public AStarDistanceStrategy(final Board board) {
+        super(board);
+        this.distances = board.getColorAreasDistance();
+        // sort by eccentricity: pack eccentricity and ID into one long value
+        final long[] eccIds = new long[this.distances.length];
+        for (int caId = 0;  caId < eccIds.length;  ++caId) {
+            int ecc = 0;
+            for (final int distance : this.distances[caId]) {
+                ecc = (ecc < distance ? distance : ecc);
+            }
+            eccIds[caId] = ((long)ecc << Integer.SIZE) | caId;
+        }
+        Arrays.sort(eccIds);
+        this.idsRemote = new int[eccIds.length];
+        for (int i = 0;  i < this.idsRemote.length;  ++i) {
+            this.idsRemote[i] = (int)eccIds[eccIds.length - 1 - i];
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.AStarStrategy#setEstimatedCost(colorfill.solver.AStarNode, int, int)
+     */
+    @Override
+    public void setEstimatedCost(final AStarNode node, final int nonCompletedColors, final int maxCost) {
+        if (Integer.MAX_VALUE == maxCost) {
+            // the Puchert heuristic is never less than the cheap bounds, so they are useful only for skipping it
+            super.setEstimatedCost(node, nonCompletedColors, maxCost); // AStarPuchertStrategy
+            return;
+        }
+        // cheapest bound first
+        final int colorCost = node.getSolutionSize() + Integer.bitCount(nonCompletedColors);
+        if (colorCost > maxCost) {
+            node.setEstimatedCostPending(colorCost); // a lower bound is good enough here
+            return;
+        }
+        final int distanceCost = node.getSolutionSize() + this.getDistanceBound(node.getFlooded(), node.getNeighbors());
+        if (distanceCost > maxCost) {
+            node.setEstimatedCostPending(distanceCost); // a lower bound is good enough here
+            return;
+        }
+        super.setEstimatedCost(node, nonCompletedColors, maxCost); // AStarPuchertStrategy
+    }
+
+    /**
+     * get the largest distance between some remote color areas that are not flooded yet,
+     * and the nearest flooded color area.
+     * (each path from the flooded color areas leads through one of their neighbors,
+     * so it's sufficient to check the neighbors, which are much less than the flooded color areas)
+     * @param flooded
+     * @param neighbors
+     * @return lower bound of the number of moves
+     */
+    private int getDistanceBound(final long[] flooded, final long[] neighbors) {
+        int result = 0;
+        for (int i = 0, numCandidates = 0;  (i < this.idsRemote.length) && (numCandidates < NUM_CANDIDATES);  ++i) {
+            final int caId = this.idsRemote[i];
+            if (false == ColorAreaSet.contains(flooded, caId)) {
+                ++numCandidates;
+                final int[] distance = this.distances[caId];
+                int minDistance = Integer.MAX_VALUE;
+                this.iter.init(neighbors);
+                for (int neighborId;  (neighborId = this.iter.nextOrNegative()) >= 0;  ) {
+                    minDistance = (minDistance > distance[neighborId] ? distance[neighborId] : minDistance);
+                }
+                result = (result < minDistance + 1 ? minDistance + 1 : result);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,395 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * the external memory (disk files) used by the AStar (A*) solver in its external-memory mode.
+ * <p>
+ * the data are records of fixed size, each record is an array of "long" values,
+ * and its first elements are the key (the set of flooded color areas).
+ * the records are collected in layers: each layer keeps a buffer in memory, which is sorted by key
+ * and written to a "run" file when it's full. when the layer is complete, all its runs are merged
+ * into one sorted file, and the duplicates are removed (delayed duplicate detection):
+ * duplicate keys within the layer itself, and keys that are contained in one of the previous layers.
+ * the files are read back through memory-mapped I/O.
+ */
+final class AStarExternalMemory implements Closeable {
+
+    private static final int MAX_BUFFER_BYTES = 1 << 26; // 64 MiB, maximum size of the in-memory buffer of each layer  CONFIGURE THIS
+    private static final int MAP_WINDOW_BYTES = 1 << 26; // 64 MiB, size of the memory-mapped window of each reader  CONFIGURE THIS
+    private static final int WRITE_BUFFER_BYTES = 1 << 20; // 1 MiB
+
+    private final File directory;
+    private final int keySize; // number of "long" elements in the key of each record
+    private final int width;   // number of "long" elements in each record
+    private final List<File> files = new ArrayList<File>(); // all files, to be deleted by close()
+    private final List<File> mergedLayers = new ArrayList<File>(); // the previous layers, for duplicate detection
+
+    /**
+     * constructor
+     * @param directory where the files are created
+     * @param keySize number of "long" elements in the key of each record
+     * @param width number of "long" elements in each record
+     */
+    AStarExternalMemory(final File directory, final int keySize, final int width) {
+        this.directory = directory;
+        this.keySize = keySize;
+        this.width = width;
+    }
+
+    /**
+     * create a new empty layer.
+     * @return
+     */
+    Layer newLayer() {
+        return new Layer();
+    }
+
+    /**
+     * open a file for reading.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    RunReader open(final File file) throws IOException {
+        return new RunReader(file);
+    }
+
+    /**
+     * delete all files, so the layers can be used again from the start.
+     * (on some platforms a file can't be deleted while it's still mapped; then it's tried again later)
+     */
+    void clear() {
+        for (final Iterator<File> iter = this.files.iterator();  iter.hasNext();  ) {
+            if (iter.next().delete()) {
+                iter.remove();
+            }
+        }
+        this.mergedLayers.clear();
+    }
+
+    /**
+     * delete all files.
+     */
+    @Override
+    public void close() {
+        this.clear();
+    }
+
+    private File newFile() throws IOException {
+        final File file = File.createTempFile("colorfill_astar_", ".run", this.directory);
+        this.files.add(file);
+        return file;
+    }
+
+    private void deleteFile(final File file) {
+        if (file.delete()) {
+            this.files.remove(file);
+        }
+    }
+
+    private int compareKeys(final long[] a, final int aOffset, final long[] b, final int bOffset) {
+        for (int i = 0;  i < this.keySize;  ++i) {
+            final int cmp = Long.compare(a[aOffset + i], b[bOffset + i]);
+            if (0 != cmp) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+
+    /**
+     * the records of one layer.
+     */
+    final class Layer {
+        private long[] buffer = new long[AStarExternalMemory.this.width << 10];
+        private int numRecords = 0;
+        private final List<File> runs = new ArrayList<File>();
+
+        private Layer() {
+            // use newLayer()
+        }
+
+        /**
+         * add a copy of the record to this layer.
+         * @param record
+         * @throws IOException
+         */
+        void add(final long[] record) throws IOException {
+            final int width = AStarExternalMemory.this.width;
+            if ((this.numRecords + 1) * width > this.buffer.length) {
+                if ((long)this.buffer.length * 2 * Long.BYTES <= MAX_BUFFER_BYTES) {
+                    this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+                } else {
+                    this.writeRun();
+                }
+            }
+            System.arraycopy(record, 0, this.buffer, this.numRecords * width, width);
+            ++this.numRecords;
+        }
+
+        /**
+         * sort the buffer and write it to a new run file, without duplicates.
+         */
+        private void writeRun() throws IOException {
+            if (0 == this.numRecords) {
+                return;
+            }
+            final int width = AStarExternalMemory.this.width;
+            final int[] index = new int[this.numRecords];
+            for (int i = 0;  i < index.length;  ++i) {
+                index[i] = i * width;
+            }
+            this.sort(index, 0, index.length - 1);
+            final File file = AStarExternalMemory.this.newFile();
+            try (final RunWriter writer = new RunWriter(file)) {
+                for (int i = 0;  i < index.length;  ++i) {
+                    if ((i > 0) && (0 == AStarExternalMemory.this.compareKeys(this.buffer, index[i - 1], this.buffer, index[i]))) {
+                        continue;
+                    }
+                    writer.write(this.buffer, index[i]);
+                }
+            }
+            this.runs.add(file);
+            this.numRecords = 0;
+        }
+
+        /**
+         * quicksort of the records, using the index which contains the offsets of the records in the buffer.
+         */
+        private void sort(final int[] index, int lo, int hi) {
+            while (lo < hi) {
+                final int pivot = index[(lo + hi) >>> 1];
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (AStarExternalMemory.this.compareKeys(this.buffer, index[i], this.buffer, pivot) < 0) { ++i; }
+                    while (AStarExternalMemory.this.compareKeys(this.buffer, index[j], this.buffer, pivot) > 0) { --j; }
+                    if (i <= j) {
+                        final int tmp = index[i];
+                        index[i++] = index[j];
+                        index[j--] = tmp;
+                    }
+                }
+                // recursion into the smaller part, loop for the larger part
+                if (j - lo < hi - i) {
+                    this.sort(index, lo, j);
+                    lo = i;
+                } else {
+                    this.sort(index, i, hi);
+                    hi = j;
+                }
+            }
+        }
+
+        /**
+         * merge all runs of this layer into one sorted file, and remove the duplicates:
+         * the records whose keys are contained in this layer already, or in one of the previous layers.
+         * then this layer becomes one of the previous layers.
+         * @return the merged file
+         * @throws IOException
+         */
+        File merge() throws IOException {
+            this.writeRun();
+            this.buffer = null;
+            final AStarExternalMemory mem = AStarExternalMemory.this;
+            final PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, this.runs.size()), new Comparator<RunReader>() {
+                @Override
+                public int compare(RunReader o1, RunReader o2) {
+                    return mem.compareKeys(o1.record, 0, o2.record, 0);
+                }
+            });
+            final List<RunReader> previous = new ArrayList<RunReader>();
+            final File file = mem.newFile();
+            try (final RunWriter writer = new RunWriter(file)) {
+                for (final File run : this.runs) {
+                    final RunReader reader = new RunReader(run);
+                    if (reader.next()) {
+                        queue.offer(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+                for (final File layer : mem.mergedLayers) {
+                    final RunReader reader = new RunReader(layer);
+                    if (reader.next()) {
+                        previous.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+                final long[] lastKey = new long[mem.keySize];
+                boolean hasLastKey = false;
+                while (false == queue.isEmpty()) {
+                    final RunReader reader = queue.poll();
+                    if ((false == hasLastKey) || (0 != mem.compareKeys(reader.record, 0, lastKey, 0))) {
+                        System.arraycopy(reader.record, 0, lastKey, 0, mem.keySize);
+                        hasLastKey = true;
+                        if (false == this.isContained(previous, reader.record)) {
+                            writer.write(reader.record, 0);
+                        }
+                    }
+                    if (reader.next()) {
+                        queue.offer(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            } finally {
+                for (final RunReader reader : queue) {
+                    reader.close();
+                }
+                for (final RunReader reader : previous) {
+                    reader.close();
+                }
+            }
+            for (final File run : this.runs) {
+                mem.deleteFile(run);
+            }
+            this.runs.clear();
+            mem.mergedLayers.add(file);
+            return file;
+        }
+
+        /**
+         * check if the key of this record is contained in one of the previous layers.
+         * the keys must be checked in ascending order, because the readers are only moved forward.
+         */
+        private boolean isContained(final List<RunReader> previous, final long[] record) {
+            for (final RunReader reader : previous) {
+                int cmp;
+                while ((false == reader.isEnd) && ((cmp = AStarExternalMemory.this.compareKeys(reader.record, 0, record, 0)) <= 0)) {
+                    if (0 == cmp) {
+                        return true;
+                    }
+                    reader.next();
+                }
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * read the records of a file through a memory-mapped window.
+     */
+    final class RunReader implements Closeable {
+        final long[] record = new long[AStarExternalMemory.this.width];
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final long fileSize;
+        private final long windowSize;
+        private long windowPosition = 0;
+        private LongBuffer window = null;
+        private boolean isEnd = false;
+
+        private RunReader(final File file) throws IOException {
+            this.raf = new RandomAccessFile(file, "r");
+            this.channel = this.raf.getChannel();
+            this.fileSize = this.channel.size();
+            final long recordBytes = (long)AStarExternalMemory.this.width * Long.BYTES;
+            this.windowSize = Math.max(1, MAP_WINDOW_BYTES / recordBytes) * recordBytes; // whole records only
+        }
+
+        /**
+         * read the next record.
+         * @return false if there are no more records
+         */
+        boolean next() {
+            try {
+                if ((null == this.window) || (false == this.window.hasRemaining())) {
+                    if (this.windowPosition >= this.fileSize) {
+                        this.isEnd = true;
+                        return false;
+                    }
+                    final long size = Math.min(this.windowSize, this.fileSize - this.windowPosition);
+                    this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.windowPosition, size).asLongBuffer();
+                    this.windowPosition += size;
+                }
+                this.window.get(this.record);
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.window = null;
+            this.raf.close();
+        }
+    }
+
+
+    /**
+     * write records to a file, through a buffer.
+     */
+    private final class RunWriter implements Closeable {
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        private RunWriter(final File file) throws IOException {
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = this.raf.getChannel();
+            this.buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        }
+
+        private void write(final long[] data, final int offset) throws IOException {
+            final int width = AStarExternalMemory.this.width;
+            if (this.buffer.remaining() < width * Long.BYTES) {
+                this.flush();
+            }
+            for (int i = offset, end = offset + width;  i < end;  ++i) {
+                this.buffer.putLong(data[i]);
+            }
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.flush();
+            } finally {
+                this.raf.close();
+            }
+        }
+    }
+}
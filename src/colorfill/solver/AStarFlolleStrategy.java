@@ -41,11 +41,11 @@ public class AStarFlolleStrategy extends AStarPuchertStrategy {
     }
 
     /* (non-Javadoc)
-     * @see colorfill.solver.AStarStrategy#setEstimatedCost(colorfill.solver.AStarNode)
+     * @see colorfill.solver.AStarStrategy#setEstimatedCost(colorfill.solver.AStarNode, int, int)
      */
     @Override
-    public void setEstimatedCost(final AStarNode node, int nonCompletedColors) {
-        // this method is basically copy&paste of method AStarPuchertStrategy.setEstimatedCost(AStarNode)
+    public void setEstimatedCost(final AStarNode node, int nonCompletedColors, final int maxCost) {
+        // this method is basically copy&paste of method AStarPuchertStrategy.setEstimatedCost(AStarNode, int, int)
         // with important changes in the code block following the comment "Nothing found, do the color-blind pseudo-move"
 
         // An inadmissible heuristic for Flood-It. Using this strategy will result in optimal or close to optimal solutions.
@@ -57,10 +57,11 @@ public class AStarFlolleStrategy extends AStarPuchertStrategy {
         // already more than <caLimit> of the color areas are flooded, so call the admissible strategy.
         // note: we're counting color areas here, unlike Flolle's "terminal-flood" which counted the individual fields (slower)
         if (node.getFloodedSize() > this.caLimit) {
-            super.setEstimatedCost(node, nonCompletedColors); // AStarPuchertStrategy
+            super.setEstimatedCost(node, nonCompletedColors, maxCost); // AStarPuchertStrategy
             return;
         }
 
+        final int maxDistance = maxCost - node.getSolutionSize();
         long[] next = this.casNext;
         long[] current = this.casCurrent;
         node.copyNeighborsTo(current);
@@ -142,6 +143,11 @@ public class AStarFlolleStrategy extends AStarPuchertStrategy {
                 }
                 ColorAreaSet.addAll(next, current); // move other colors to next
             }
+            if (distance > maxDistance) {
+                // the estimated cost is too high already
+                node.setEstimatedCostPending(node.getSolutionSize() + distance);
+                return;
+            }
 
             // Move the next layer into the current.
             final long[] t = current;
@@ -31,38 +31,52 @@ public class AStarNode {
 
     private final long[] flooded;
     private final long[] neighbors;
-    private int solutionEntry;
+    private long hash; // Zobrist hash value of "flooded"
+    private long solutionEntry;
 
     /**
      * one 32bit-int data field that stores the values of two separate fields:
      * <p>
-     * byte estimatedCost = estimated total number of steps to end of search = solutionSize + estimation by the heuristic algorithm<br>
-     * byte solutionSize  = number of steps done, from start of search to the current (intermediate) state
+     * 15 bits estimatedCost = estimated total number of steps to end of search = solutionSize + estimation by the heuristic algorithm<br>
+     * 15 bits solutionSize  = number of steps done, from start of search to the current (intermediate) state
      * <p>
      * the fields estimatedCost and solutionSize are stored in a particular way,
      * to facilitate the operation of "strongerComparator" in a single step, for increased performance.
-     * field solutionSize is therefore located in the lower byte of the packed field
-     * and its value is stored in ones' complement format (0=0xff, 1=0xfe, 2=0xfd, ...)
+     * field solutionSize is therefore located in the lower bits of the packed field
+     * and its value is stored in ones' complement format (0=0x7fff, 1=0x7ffe, 2=0x7ffd, ...)
      * <p>
-     * TODO find something useful to store in the upper 16 bits, which are currently not used
+     * bit 30 is a flag that is set when the node has been expanded partially and was put back into the open queue.<br>
+     * bit 31 is a flag that is set when estimatedCost is only a lower bound, and the heuristic has not been evaluated yet.
+     * <p>
+     * (the fields were 8 bits each, but the wider fields are just as fast, and they are needed on very large boards)
      */
     private int packedData;
-    private static final int DATA_MASK_ESTIMATED_COST   = 0x0000ff00;
-    private static final int DATA_SHIFT_ESTIMATED_COST  = 8;
-    private static final int DATA_MASK_SOLUTION_SIZE    = 0x000000ff;
+    private static final int DATA_MASK_ESTIMATED_COST   = 0x3fff8000;
+    private static final int DATA_SHIFT_ESTIMATED_COST  = 15;
+    private static final int DATA_MASK_SOLUTION_SIZE    = 0x00007fff;
     private static final int DATA_MASK_ESTIMATED_COST_SOLUTION_SIZE = DATA_MASK_ESTIMATED_COST | DATA_MASK_SOLUTION_SIZE;
+    private static final int DATA_FLAG_PARTIALLY_EXPANDED = 0x40000000;
+    private static final int DATA_FLAG_ESTIMATE_PENDING   = 0x80000000;
+
+    /**
+     * the maximum value of estimatedCost and of solutionSize.
+     */
+    public static final int MAX_VALUE = DATA_MASK_SOLUTION_SIZE;
+    private static final int DATA_MASK_FLAGS = DATA_FLAG_PARTIALLY_EXPANDED | DATA_FLAG_ESTIMATE_PENDING;
 
     /**
      * initial constructor.
      * @param startCa
+     * @param zobristKeys random numbers for Zobrist hashing, indexed by ColorArea ID
      */
-    public AStarNode(final Board board, final ColorArea startCa, final SolutionTree solutionTree) {
+    public AStarNode(final Board board, final ColorArea startCa, final SolutionTree solutionTree, final long[] zobristKeys) {
         this.flooded = ColorAreaSet.constructor(board);
         ColorAreaSet.add(this.flooded, startCa);
+        this.hash = zobristKeys[startCa.getId()];
         this.neighbors = ColorAreaSet.constructor(board);
         ColorAreaSet.addAll(this.neighbors, startCa.getNeighborsColorAreaSet());
         this.solutionEntry = solutionTree.init(startCa.getColor());
-        this.packedData = DATA_MASK_SOLUTION_SIZE; // estimatedCost=0, solutionSize=0xff=~zero
+        this.packedData = DATA_MASK_SOLUTION_SIZE; // estimatedCost=0, solutionSize=0x7fff=~zero
     }
 
     /**
@@ -72,10 +86,28 @@ public class AStarNode {
     public AStarNode(final AStarNode other) {
         this.flooded = ColorAreaSet.constructor(other.flooded);
         this.neighbors = ColorAreaSet.constructor(other.neighbors);
+        this.hash = other.hash;
         this.solutionEntry = other.solutionEntry;
         this.packedData = other.packedData;
     }
 
+    /**
+     * set the contents of this node, for example after it has been read from external memory.
+     * the solution entry is just the color of the last move here, not an entry in a SolutionTree.
+     * @param flooded
+     * @param neighbors
+     * @param hash
+     * @param lastColor color of the last move (or of the starting area)
+     * @param solutionSize
+     */
+    public void set(final long[] flooded, final long[] neighbors, final long hash, final byte lastColor, final int solutionSize) {
+        ColorAreaSet.copyFrom(this.flooded, flooded);
+        ColorAreaSet.copyFrom(this.neighbors, neighbors);
+        this.hash = hash;
+        this.solutionEntry = lastColor;
+        this.packedData = DATA_MASK_SOLUTION_SIZE & ~solutionSize; // estimatedCost=0, solutionSize in ones' complement
+    }
+
     /**
      * get the solution stored in this node.
      * @return
@@ -99,10 +131,26 @@ public class AStarNode {
      * get the current solutionEntry stored in this node. (pointer in SolutionTree)
      * @return
      */
-    public int getSolutionEntry() {
+    public long getSolutionEntry() {
         return this.solutionEntry;
     }
 
+    /**
+     * set the solutionEntry, for example after the SolutionTree has been compacted.
+     * @param solutionEntry
+     */
+    public void setSolutionEntry(final long solutionEntry) {
+        this.solutionEntry = solutionEntry;
+    }
+
+    /**
+     * get the Zobrist hash value of the set of flooded color areas.
+     * @return
+     */
+    public long getHash() {
+        return this.hash;
+    }
+
     /**
      * get the set of neighbors.
      * @return
@@ -147,9 +195,10 @@ public class AStarNode {
      * and then play the given color in the result node.
      * @param nextColor
      * @param recycleNode
+     * @param nextHash the Zobrist hash value of the result node, already calculated by the caller
      * @return
      */
-    public AStarNode copyAndPlay(final AStarNode recycleNode, final ColorAreaSet.IteratorAnd nextColorNeighbors, final long[][] idsNeighborColorAreaSets) {
+    public AStarNode copyAndPlay(final AStarNode recycleNode, final ColorAreaSet.IteratorAnd nextColorNeighbors, final long[][] idsNeighborColorAreaSets, final long nextHash) {
         final AStarNode result;
         if (null == recycleNode) {
             result = new AStarNode(this);
@@ -161,6 +210,8 @@ public class AStarNode {
             result.solutionEntry = this.solutionEntry;
             result.packedData = this.packedData;
         }
+        result.packedData &= ~DATA_MASK_FLAGS; // the new node has not been expanded or estimated yet
+        result.hash = nextHash;
         // play - compare method play()
         for (int nextColorNeighbor;  (nextColorNeighbor = nextColorNeighbors.nextOrNegative()) >= 0;  ) {
             ColorAreaSet.add(result.flooded, nextColorNeighbor);
@@ -170,8 +221,25 @@ public class AStarNode {
         return result;
     }
 
+    /**
+     * play the given color in this node.
+     * note: the solution entry is not updated here, call addSolutionEntry() for that.
+     * @param nextColorNeighbors the neighbors that have the color to be played
+     * @param idsNeighborColorAreaSets
+     * @param zobristKeys random numbers for Zobrist hashing, indexed by ColorArea ID
+     */
+    public void play(final ColorAreaSet.IteratorAnd nextColorNeighbors, final long[][] idsNeighborColorAreaSets, final long[] zobristKeys) {
+        for (int nextColorNeighbor;  (nextColorNeighbor = nextColorNeighbors.nextOrNegative()) >= 0;  ) {
+            ColorAreaSet.add(this.flooded, nextColorNeighbor);
+            this.hash ^= zobristKeys[nextColorNeighbor];
+            ColorAreaSet.addAll(this.neighbors, idsNeighborColorAreaSets[nextColorNeighbor]);
+        }
+        ColorAreaSet.removeAll(this.neighbors, this.flooded);
+    }
+
     public void addSolutionEntry(final byte nextColor, final SolutionTree solutionTree) {
-        --this.packedData; // increment solutionSize  TODO check overflow
+        assert this.getSolutionSize() < MAX_VALUE : "solutionSize overflow";
+        --this.packedData; // increment solutionSize
         this.solutionEntry = solutionTree.add(this.solutionEntry, nextColor);
     }
 
@@ -195,7 +263,8 @@ public class AStarNode {
      * @param estimatedCost
      */
     public void setEstimatedCost(final int estimatedCost) {
-        this.packedData = (this.packedData & ~DATA_MASK_ESTIMATED_COST) | (estimatedCost << DATA_SHIFT_ESTIMATED_COST); // TODO check overflow
+        assert (estimatedCost >= 0) && (estimatedCost <= MAX_VALUE) : "estimatedCost overflow";
+        this.packedData = (this.packedData & ~(DATA_MASK_ESTIMATED_COST | DATA_FLAG_ESTIMATE_PENDING)) | (estimatedCost << DATA_SHIFT_ESTIMATED_COST);
     }
     public int getEstimatedCost() {
         return ((this.packedData & DATA_MASK_ESTIMATED_COST) >>> DATA_SHIFT_ESTIMATED_COST);
@@ -203,6 +272,28 @@ public class AStarNode {
     public static int getEstimatedCost(final int data) {
         return ((data & DATA_MASK_ESTIMATED_COST) >>> DATA_SHIFT_ESTIMATED_COST);
     }
+    /**
+     * mark this node as partially expanded, i.e. some of its children have not been generated yet.
+     */
+    public void setPartiallyExpanded() {
+        this.packedData |= DATA_FLAG_PARTIALLY_EXPANDED;
+    }
+    public boolean isPartiallyExpanded() {
+        return (0 != (this.packedData & DATA_FLAG_PARTIALLY_EXPANDED));
+    }
+
+    /**
+     * set a lower bound of the estimated cost; the heuristic will be evaluated later,
+     * when this node is polled from the open queue.
+     * @param lowerBound
+     */
+    public void setEstimatedCostPending(final int lowerBound) {
+        this.setEstimatedCost(lowerBound);
+        this.packedData |= DATA_FLAG_ESTIMATE_PENDING;
+    }
+    public boolean isEstimatePending() {
+        return (0 != (this.packedData & DATA_FLAG_ESTIMATE_PENDING));
+    }
     public int getEstimatedCostSolutionSize() {
         return (this.packedData & DATA_MASK_ESTIMATED_COST_SOLUTION_SIZE);
     }
@@ -42,11 +42,27 @@ public class AStarPuchertStrategy implements AStarStrategy {
         this.iter = new ColorAreaSet.Iterator();
     }
 
+    /* (non-Javadoc)
+     * @see colorfill.solver.AStarStrategy#getInfo()
+     */
+    @Override
+    public String getInfo() {
+        return null; // no info available
+    }
+
     /* (non-Javadoc)
      * @see colorfill.solver.AStarStrategy#setEstimatedCost(colorfill.solver.AStarNode)
      */
     @Override
-    public void setEstimatedCost(final AStarNode node, int nonCompletedColors) {
+    public void setEstimatedCost(final AStarNode node, final int nonCompletedColors) {
+        this.setEstimatedCost(node, nonCompletedColors, Integer.MAX_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.AStarStrategy#setEstimatedCost(colorfill.solver.AStarNode, int, int)
+     */
+    @Override
+    public void setEstimatedCost(final AStarNode node, int nonCompletedColors, final int maxCost) {
 
         // quote from floodit.cpp: int State::computeValuation()
         // (in branch "performance")
@@ -59,6 +75,7 @@ public class AStarPuchertStrategy implements AStarStrategy {
         // closer to the end.
 
         int distance = 0;
+        final int maxDistance = maxCost - node.getSolutionSize();
         long[] next = this.casNext;
         long[] current = this.casCurrent;
         node.copyNeighborsTo(current);
@@ -102,6 +119,11 @@ public class AStarPuchertStrategy implements AStarStrategy {
                 ColorAreaSet.addAllLookup(next, current, this.idsNeighborColorAreaSets);
                 ColorAreaSet.removeAll(next, visited);
             }
+            if (distance > maxDistance) {
+                // the estimated cost is too high already - it's still a valid lower bound
+                node.setEstimatedCostPending(node.getSolutionSize() + distance);
+                return;
+            }
 
             // Move the next layer into the current.
             final long[] t = current;
@@ -17,7 +17,16 @@
 
 package colorfill.solver;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
@@ -35,16 +44,37 @@ public class AStarSolver extends AbstractSolver {
 
     private Class<? extends AStarStrategy> strategyClass = AStarPuchertStrategy.class; // default
     private AStarStrategy strategy;
-    private final SolutionTree solutionTree = new SolutionTree();
+    private final SolverContext context; // memory reused from the previous board, may be null
+    private final SolutionTree solutionTree;
     private final ColorAreaSet.IteratorAnd iterAnd;
     private final long[][] casByColorBits;
+    private boolean lossyClosedSet = false; // CONFIGURE THIS
+    private boolean partialExpansion = false; // CONFIGURE THIS
+    private boolean lazyEstimation = false; // CONFIGURE THIS
+    private boolean layeredClosedSet = false; // CONFIGURE THIS
+    private boolean compactSolutionTree = false; // CONFIGURE THIS
+    private static final long COMPACTION_MIN_ENTRIES = 1L << 26; // the SolutionTree is not compacted below this size  CONFIGURE THIS
+    private File externalMemory = null; // directory for the files of the external-memory mode, null = off  CONFIGURE THIS
+    private String compositeSpec = "AStarPuchertStrategy"; // the expression of AStarCompositeStrategy  CONFIGURE THIS
+    private int maxSearchDepth; // an upper bound of the number of moves, see getUpperBound()
 
     /**
      * construct a new solver for this Board.
      * @param board the problem to be solved
      */
     protected AStarSolver(Board board) {
+        this(board, null);
+    }
+
+    /**
+     * construct a new solver for this Board.
+     * @param board the problem to be solved
+     * @param context memory reused from the previous board, or null
+     */
+    protected AStarSolver(final Board board, final SolverContext context) {
         super(board);
+        this.context = context;
+        this.solutionTree = (null == context ? new SolutionTree() : context.getSolutionTree());
         this.iterAnd = new ColorAreaSet.IteratorAnd();
         this.casByColorBits = board.getCasByColorBitsArray();
     }
@@ -75,20 +105,134 @@ public class AStarSolver extends AbstractSolver {
      */
     @Override
     public String getSolverInfo() {
-        return null; // no info available
+        final String info = this.strategy == null ? null : this.strategy.getInfo();
+        if ((null == info) || info.isEmpty()) {
+            return null;
+        } else {
+            return this.getSolverName() + " " + info;
+        }
+    }
+
+    /**
+     * select the mode of the closed set (the map of visited states).
+     * <p>
+     * the lossy mode stores only a 64-bit fingerprint of each state, which cuts the memory usage
+     * on large boards, but with a very small probability two different states could be mistaken
+     * for each other. then a state is pruned as "already visited", so the solution is still valid,
+     * but it may be longer than the optimal one. this can't be detected afterwards,
+     * so use the exact mode if the solution must be optimal.
+     * @param lossy true = lossy mode, false = exact mode (default)
+     */
+    public void setLossyClosedSet(final boolean lossy) {
+        this.lossyClosedSet = lossy;
+    }
+
+    /**
+     * select partial expansion (PEA*).
+     * <p>
+     * when a node is expanded, only the children with the same estimated cost as the node are put into
+     * the open queue, and the node itself is put back with the next higher estimated cost of its children.
+     * the other children are generated only if the search actually gets that far, so the open queue
+     * stays much smaller, at the expense of generating some children again.
+     * @param partialExpansion true = partial expansion, false = full expansion (default)
+     */
+    public void setPartialExpansion(final boolean partialExpansion) {
+        this.partialExpansion = partialExpansion;
+    }
+
+    /**
+     * select lazy evaluation of the heuristic.
+     * <p>
+     * a new node is put into the open queue with the estimated cost of its parent as a lower bound.
+     * the heuristic is evaluated only when the node is polled from the open queue; if its estimated cost
+     * has increased, and it is no longer the best node, then it's put back into the open queue.
+     * so the heuristic is not evaluated for the many nodes that are never polled.
+     * (not used together with partial expansion, which needs the estimated cost of all children)
+     * @param lazyEstimation true = lazy evaluation, false = evaluate for each new node (default)
+     */
+    public void setLazyEstimation(final boolean lazyEstimation) {
+        this.lazyEstimation = lazyEstimation;
+    }
+
+    /**
+     * select the compaction of the SolutionTree.
+     * <p>
+     * the SolutionTree stores the moves of all nodes that have been put into the open queue,
+     * including the dead branches, whose nodes have been expanded or dropped.
+     * when the compaction is selected, the entries of the dead branches are removed
+     * whenever the size of the SolutionTree has doubled, so that only the entries of
+     * the nodes in the open queue and their ancestors remain.
+     * @param compact true = compact the SolutionTree, false = keep all entries (default)
+     */
+    public void setCompactSolutionTree(final boolean compact) {
+        this.compactSolutionTree = compact;
+    }
+
+    /**
+     * select the layered closed set (breadth-first heuristic search).
+     * <p>
+     * a move only adds color areas to the flooded set, so a node can only be reached from nodes
+     * that have less flooded color areas. in this mode the nodes are expanded in layers, ordered by
+     * the number of flooded color areas, and each layer has its own closed set. when a layer has been
+     * expanded, none of its nodes can be reached again, so the layer and its closed set are dropped.
+     * only the nodes whose estimated cost is within a limit are expanded; the limit is increased
+     * in each iteration (breadth-first iterative deepening). the solutions are stored in the SolutionTree.
+     * (the other modes are not used here)
+     * @param layered true = layered closed set, false = one closed set for the whole search (default)
+     */
+    public void setLayeredClosedSet(final boolean layered) {
+        this.layeredClosedSet = layered;
+    }
+
+    /**
+     * select the external-memory mode.
+     * <p>
+     * the nodes are not kept in memory, but in sorted files in the given directory.
+     * the search runs layer by layer, ordered by solution size, and expands only the nodes whose
+     * estimated cost is within a limit, which is increased in each iteration (breadth-first iterative deepening).
+     * the duplicate nodes are removed when a layer is complete, by merging its files (delayed duplicate detection).
+     * so the memory usage does not grow with the number of nodes, at the expense of disk space and time,
+     * and boards can be solved that are too hard for the other modes. (the other modes are not used here)
+     * @param directory where the temporary files are created, or null = keep all nodes in memory (default)
+     */
+    public void setExternalMemory(final File directory) {
+        this.externalMemory = directory;
+    }
+
+    /**
+     * set the expression of the composition, which is used if the strategy is {@link AStarCompositeStrategy}.
+     * @param spec the expression, for example <code>max(AStarDistanceStrategy, AStarFlolleStrategy)</code>
+     */
+    public void setCompositeSpec(final String spec) {
+        this.compositeSpec = spec;
     }
 
     private AStarStrategy makeStrategy() {
-        final AStarStrategy result;
-        if (AStarPuchertStrategy.class.equals(this.strategyClass)) {
-            result = new AStarPuchertStrategy(this.board);
-        } else if (AStarFlolleStrategy.class.equals(this.strategyClass)) {
-            result = new AStarFlolleStrategy(this.board);
-        } else {
+        if (AStarCompositeStrategy.class.equals(this.strategyClass)) {
+            return new AStarCompositeStrategy(this.board, this.compositeSpec);
+        }
+        return makeStrategy(this.strategyClass, this.board);
+    }
+
+    /**
+     * create a new instance of the strategy class, using its constructor that takes a Board.
+     * @param strategyClass
+     * @param board
+     * @return the strategy
+     */
+    static AStarStrategy makeStrategy(final Class<? extends AStarStrategy> strategyClass, final Board board) {
+        try {
+            return strategyClass.getConstructor(Board.class).newInstance(board);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
             throw new IllegalArgumentException(
-                    "unsupported strategy class " + this.strategyClass.getName());
+                    "unsupported strategy class " + strategyClass.getName(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(
+                    "unsupported strategy class " + strategyClass.getName(), e);
         }
-        return result;
     }
 
     /* (non-Javadoc)
@@ -99,59 +243,160 @@ public class AStarSolver extends AbstractSolver {
         this.strategy = this.makeStrategy();
 
         final ColorArea startCa = this.board.getColorArea4Cell(startPos);
+        final Solution upperBoundSolution = this.getUpperBound(startPos);
+        this.maxSearchDepth = Math.min(AStarNode.MAX_VALUE, upperBoundSolution.getNumSteps());
 
-        if (this.strategy instanceof AStarPuchertStrategy) {
-            this.executeInternalPuchert(startCa);
-        } else if (this.strategy instanceof AStarFlolleStrategy) {
-            this.executeInternalPuchert(startCa);
+        if (null != this.externalMemory) {
+            this.executeInternalExternal(startCa);
+        } else if (this.layeredClosedSet) {
+            this.executeInternalLayered(startCa);
+        } else {
+            this.executeInternalPuchert(startCa, this.lossyClosedSet);
+        }
+        if (this.solutionSize > upperBoundSolution.getNumSteps()) {
+            // the search has not found a solution within the upper bound, so the solution of the upper bound is the best one
+            this.addSolution(upperBoundSolution.getSteps());
         }
     }
 
+    /**
+     * get a cheap upper bound of the number of moves, which limits the search depth,
+     * and selects the size of the values in the closed set, see {@link HashMapLongArray2Byte}.
+     * this is the previous solution, if there is one, or else a greedy solution.
+     * @param startPos
+     * @return the solution whose size is the upper bound
+     * @throws InterruptedException
+     */
+    private Solution getUpperBound(final int startPos) throws InterruptedException {
+        if (false == this.solutions.isEmpty()) {
+            return this.solutions.get(0); // the previous solution
+        }
+        final LookaheadSolver greedy = new LookaheadSolver(this.board);
+        greedy.setMaxDepth(1);
+        greedy.setMoveTimeBudget(0);
+        greedy.execute(startPos, null);
+        return greedy.getSolution();
+    }
+
 
-    private void executeInternalPuchert(final ColorArea startCa) throws InterruptedException {
-        final Queue<AStarNode> open = new PriorityQueue<AStarNode>(AStarNode.strongerComparator());
-        final HashMapLongArray2Byte map = new HashMapLongArray2Byte(this.board);
-        open.offer(new AStarNode(this.board, startCa, this.solutionTree));
+    private void executeInternalPuchert(final ColorArea startCa, final boolean lossy) throws InterruptedException {
+        final Comparator<AStarNode> comparator = AStarNode.strongerComparator();
+        final Queue<AStarNode> open = new PriorityQueue<AStarNode>(comparator);
+        final boolean isLazy = this.lazyEstimation && (false == this.partialExpansion);
+        final long[] zobristKeys;
+        final HashMapLongArray2Byte map;
+        if (null == this.context) {
+            zobristKeys = HashMapLongArray2Byte.makeZobristKeys(this.board);
+            map = new HashMapLongArray2Byte(this.board, zobristKeys, lossy, this.maxSearchDepth);
+        } else {
+            zobristKeys = this.context.getZobristKeys(this.board);
+            map = this.context.getMap(this.board, zobristKeys, lossy, this.maxSearchDepth);
+        }
+        open.offer(new AStarNode(this.board, startCa, this.solutionTree, zobristKeys));
         AStarNode recycleNode = null;
-        final int colorBitLimit = this.casByColorBits.length;
         final long[][] idsNeighborColorAreaSets = this.board.getNeighborColorAreaSet4IdArray();
+        final byte[] forcedMoves = new byte[Board.MAX_NUMBER_OF_COLORS];
+        long compactionSize = COMPACTION_MIN_ENTRIES;
         while (open.size() > 0) {
             if (Thread.interrupted()) { throw new InterruptedException(); }
+            if (this.compactSolutionTree && (this.solutionTree.size() >= compactionSize)) {
+                this.solutionTree.compact(open);
+                compactionSize = Math.max(COMPACTION_MIN_ENTRIES, this.solutionTree.size() * 2);
+            }
             final AStarNode currentNode = open.poll();
+            if (currentNode.getSolutionSize() >= this.maxSearchDepth) {
+                continue; // at least one more move, so it can't be a solution within the upper bound
+            }
             final long[] flooded = currentNode.getFlooded();
-            int nonCompletedColors = colorBitLimit - 1;
-            for (int colorBit = 1;  colorBit < colorBitLimit;  colorBit <<= 1) {
-                if (ColorAreaSet.containsAll(flooded, this.casByColorBits[colorBit])) {
-                    nonCompletedColors ^= colorBit;
+            int nonCompletedColors = this.getNonCompletedColors(flooded);
+            if (currentNode.isEstimatePending()) {
+                // lazy evaluation of the heuristic
+                final int lowerBound = currentNode.getEstimatedCost();
+                this.strategy.setEstimatedCost(currentNode, nonCompletedColors);
+                if (currentNode.getEstimatedCost() > lowerBound) {
+                    final AStarNode bestNode = open.peek();
+                    if ((null != bestNode) && (comparator.compare(bestNode, currentNode) < 0)) {
+                        open.offer(currentNode); // not the best node any more
+                        continue;
+                    }
                 }
+                // else: still the best node - expand it now, without putting it back into the open queue
             }
             final int prevColorBit = 1 << (currentNode.getSolutionEntry() & SolutionTree.COLOR_BIT_MASK);
-            // play all possible colors
             final long[] neighbors = currentNode.getNeighbors();
             final int nextSolutionSize = currentNode.getSolutionSize() + 1;
+            int forcedColors = this.getColorsCompletable(flooded, neighbors, nonCompletedColors);
+            if (0 != forcedColors) {
+                // a move that completes a color is always an optimal move, so we generate only this child.
+                // a chain of such forced moves is collapsed into one macro node.
+                AStarNode nextNode = null;
+                int numForcedMoves = 0;
+                do {
+                    final int colorBit = forcedColors & -forcedColors;  // Integer.lowestOneBit(forcedColors);
+                    final long[] casColorBit = this.casByColorBits[colorBit];
+                    if (null == nextNode) {
+                        final long nextHash = this.nextHash(currentNode.getHash(), this.iterAnd.init(neighbors, casColorBit), zobristKeys);
+                        nextNode = currentNode.copyAndPlay(recycleNode, this.iterAnd.restart(), idsNeighborColorAreaSets, nextHash);
+                    } else {
+                        nextNode.play(this.iterAnd.init(nextNode.getNeighbors(), casColorBit), idsNeighborColorAreaSets, zobristKeys);
+                    }
+                    forcedMoves[numForcedMoves++] = (byte)(31 - Integer.numberOfLeadingZeros(colorBit));
+                    nonCompletedColors ^= colorBit;
+                    if (0 == (nonCompletedColors & (nonCompletedColors - 1))) { // one or zero colors remaining
+                        for (int i = 0;  i < numForcedMoves;  ++i) {
+                            nextNode.addSolutionEntry(forcedMoves[i], this.solutionTree);
+                        }
+                        if (0 != nonCompletedColors) {
+                            nextNode.addSolutionEntry((byte)(31 - Integer.numberOfLeadingZeros(nonCompletedColors)), this.solutionTree);
+                        }
+                        this.addSolution(nextNode.getSolution(this.solutionTree));
+                        assert printQueueStatistics(open);
+                        return;
+                    }
+                    forcedColors = this.getColorsCompletable(nextNode.getFlooded(), nextNode.getNeighbors(), nonCompletedColors);
+                } while (0 != forcedColors);
+                if ((currentNode.getSolutionSize() + numForcedMoves < this.maxSearchDepth)
+                        && map.putIfLess(nextNode.getHash(), nextNode.getFlooded(), currentNode.getSolutionSize() + numForcedMoves)) {
+                    for (int i = 0;  i < numForcedMoves;  ++i) {
+                        nextNode.addSolutionEntry(forcedMoves[i], this.solutionTree);
+                    }
+                    if (isLazy) {
+                        nextNode.setEstimatedCostPending(currentNode.getEstimatedCost());
+                    } else {
+                        this.strategy.setEstimatedCost(nextNode, nonCompletedColors);
+                    }
+                    open.offer(nextNode);
+                }
+                recycleNode = currentNode;
+                continue;
+            }
+            // no color can be completed - play all possible colors.
+            // (after a forced move, the previous color is completed, and canPlay() does not apply)
+            final boolean isAfterForcedMove = (0 == (nonCompletedColors & prevColorBit));
+            if (this.partialExpansion) {
+                recycleNode = this.expandPartial(currentNode, recycleNode, isAfterForcedMove, nonCompletedColors, prevColorBit, zobristKeys, map, open);
+                continue;
+            }
             for (int colors = (nonCompletedColors & ~prevColorBit);  0 != colors;  ) {
                 final int colorBit = colors & -colors;  // Integer.lowestOneBit(colors);
                 colors ^= colorBit;
                 final long[] casColorBit = this.casByColorBits[colorBit];
                 if (ColorAreaSet.intersects(neighbors, casColorBit)
-                        && this.canPlay(colorBit, this.iterAnd.init(neighbors, casColorBit), currentNode)) {
-                    final AStarNode nextNode = currentNode.copyAndPlay(recycleNode, this.iterAnd.restart(), idsNeighborColorAreaSets);
-                    if (map.putIfLess(nextNode.getFlooded(), nextSolutionSize)) {
+                        && (isAfterForcedMove || this.canPlay(colorBit, this.iterAnd.init(neighbors, casColorBit), currentNode))) {
+                    // calculate the hash value of the child node incrementally, and probe the map before
+                    // the child node is created, so that duplicate nodes are not copied at all.
+                    final long nextHash = this.nextHash(currentNode.getHash(), this.iterAnd.init(neighbors, casColorBit), zobristKeys);
+                    if (map.putIfLess(nextHash, flooded, neighbors, casColorBit, nextSolutionSize)) {
+                        final AStarNode nextNode = currentNode.copyAndPlay(recycleNode, this.iterAnd.restart(), idsNeighborColorAreaSets, nextHash);
                         nextNode.addSolutionEntry((byte)(31 - Integer.numberOfLeadingZeros(colorBit)), this.solutionTree);
-                        if (ColorAreaSet.containsAll(nextNode.getFlooded(), casColorBit) // color completed
-                                && (0 == ((nonCompletedColors ^= colorBit) & (nonCompletedColors - 1)))) { // one or zero colors remaining
-                            if (0 != nonCompletedColors) {
-                                nextNode.addSolutionEntry((byte)(31 - Integer.numberOfLeadingZeros(nonCompletedColors)), this.solutionTree);
-                            }
-                            this.addSolution(nextNode.getSolution(this.solutionTree));
-                            assert printQueueStatistics(open);
-                            return;
+                        // this move can't complete a color here, because then it would have been a forced move.
+                        if (isLazy) {
+                            nextNode.setEstimatedCostPending(currentNode.getEstimatedCost());
                         } else {
                             this.strategy.setEstimatedCost(nextNode, nonCompletedColors);
-                            open.offer(nextNode);
-                            nonCompletedColors |= colorBit;
-                            recycleNode = null;
                         }
+                        open.offer(nextNode);
+                        recycleNode = null;
                     }
                 }
             }
@@ -160,6 +405,438 @@ public class AStarSolver extends AbstractSolver {
     }
 
 
+    /**
+     * the external-memory mode: breadth-first iterative deepening, with the nodes stored in files.
+     */
+    private void executeInternalExternal(final ColorArea startCa) throws InterruptedException {
+        final long[] zobristKeys = HashMapLongArray2Byte.makeZobristKeys(this.board);
+        final AStarNode startNode = new AStarNode(this.board, startCa, this.solutionTree, zobristKeys);
+        this.strategy.setEstimatedCost(startNode, this.getNonCompletedColors(startNode.getFlooded()));
+        final int keySize = startNode.getFlooded().length;
+        final int width = keySize + 1 + ((this.maxSearchDepth + 15) >> 4); // see searchExternal()
+        final AStarExternalMemory mem = new AStarExternalMemory(this.externalMemory, keySize, width);
+        try {
+            // the search stops when a solution is found within the cost limit, or when the
+            // cost limit reaches the size of the previous solution (which is optimal then)
+            for (int costLimit = startNode.getEstimatedCost();  (costLimit < this.solutionSize) && (costLimit <= this.maxSearchDepth);  ) {
+                costLimit = this.searchExternal(mem, startNode, costLimit, zobristKeys);
+                mem.clear();
+            }
+        } finally {
+            mem.close(); // delete all files
+        }
+    }
+
+    /**
+     * one iteration of the external-memory mode: expand all nodes, layer by layer,
+     * whose estimated cost is not greater than the cost limit.
+     * <p>
+     * each node is stored as a record, which contains: the set of flooded color areas (the key),
+     * the solution size and the color of the last move, and all the moves (4 bits each, up to maxSearchDepth).
+     * @param mem the external memory, must be empty
+     * @return the cost limit of the next iteration, or the current cost limit if a solution has been found
+     */
+    private int searchExternal(final AStarExternalMemory mem, final AStarNode startNode, final int costLimit, final long[] zobristKeys) throws InterruptedException {
+        final int keySize = startNode.getFlooded().length;
+        final int metaIndex = keySize; // solution size (bits 0-15) and color of last move (bits 16-23)
+        final int movesIndex = keySize + 1;
+        final int width = movesIndex + ((this.maxSearchDepth + 15) >> 4);
+        final long[][] idsNeighborColorAreaSets = this.board.getNeighborColorAreaSet4IdArray();
+        final long[] record = new long[width];
+        final long[] flooded = ColorAreaSet.constructor(this.board);
+        final long[] neighbors = ColorAreaSet.constructor(this.board);
+        final byte[] forcedMoves = new byte[Board.MAX_NUMBER_OF_COLORS];
+        final AStarNode currentNode = new AStarNode(startNode);
+        AStarNode recycleNode = null;
+        int nextCostLimit = Integer.MAX_VALUE;
+        final SortedMap<Integer, AStarExternalMemory.Layer> layers = new TreeMap<>();
+        try {
+            System.arraycopy(startNode.getFlooded(), 0, record, 0, keySize);
+            record[metaIndex] = (startNode.getSolutionEntry() & SolutionTree.COLOR_BIT_MASK) << 16;
+            final AStarExternalMemory.Layer startLayer = mem.newLayer();
+            startLayer.add(record);
+            layers.put(Integer.valueOf(0), startLayer);
+            while (false == layers.isEmpty()) {
+                final Integer layerKey = layers.firstKey();
+                try (final AStarExternalMemory.RunReader reader = mem.open(layers.remove(layerKey).merge())) {
+                    final long[] data = reader.record;
+                    while (reader.next()) {
+                        if (Thread.interrupted()) { throw new InterruptedException(); }
+                        System.arraycopy(data, 0, flooded, 0, keySize);
+                        ColorAreaSet.clear(neighbors);
+                        ColorAreaSet.addAllLookup(neighbors, flooded, idsNeighborColorAreaSets);
+                        ColorAreaSet.removeAll(neighbors, flooded);
+                        final int solutionSize = (int)data[metaIndex] & 0xffff;
+                        final byte lastColor = (byte)((data[metaIndex] >>> 16) & 0xff);
+                        currentNode.set(flooded, neighbors, 0, lastColor, solutionSize);
+                        int nonCompletedColors = this.getNonCompletedColors(flooded);
+                        int forcedColors = this.getColorsCompletable(flooded, neighbors, nonCompletedColors);
+                        if (0 != forcedColors) {
+                            // a chain of forced moves, like in executeInternalPuchert()
+                            AStarNode nextNode = null;
+                            int numForcedMoves = 0;
+                            boolean isFinished = false;
+                            do {
+                                final int colorBit = forcedColors & -forcedColors;  // Integer.lowestOneBit(forcedColors);
+                                final long[] casColorBit = this.casByColorBits[colorBit];
+                                if (null == nextNode) {
+                                    nextNode = currentNode.copyAndPlay(recycleNode, this.iterAnd.init(neighbors, casColorBit), idsNeighborColorAreaSets, 0);
+                                } else {
+                                    nextNode.play(this.iterAnd.init(nextNode.getNeighbors(), casColorBit), idsNeighborColorAreaSets, zobristKeys);
+                                }
+                                forcedMoves[numForcedMoves++] = (byte)(31 - Integer.numberOfLeadingZeros(colorBit));
+                                nonCompletedColors ^= colorBit;
+                                if (0 == (nonCompletedColors & (nonCompletedColors - 1))) { // one or zero colors remaining
+                                    final int totalSize = solutionSize + numForcedMoves + (0 == nonCompletedColors ? 0 : 1);
+                                    if (totalSize <= costLimit) {
+                                        final byte[] solution = new byte[totalSize];
+                                        for (int i = 0;  i < solutionSize;  ++i) {
+                                            solution[i] = (byte)((data[movesIndex + (i >> 4)] >>> ((i & 15) << 2)) & 0xf);
+                                        }
+                                        System.arraycopy(forcedMoves, 0, solution, solutionSize, numForcedMoves);
+                                        if (0 != nonCompletedColors) {
+                                            solution[totalSize - 1] = (byte)(31 - Integer.numberOfLeadingZeros(nonCompletedColors));
+                                        }
+                                        this.addSolution(solution);
+                                        return costLimit;
+                                    }
+                                    nextCostLimit = Math.min(nextCostLimit, totalSize);
+                                    isFinished = true;
+                                    break;
+                                }
+                                forcedColors = this.getColorsCompletable(nextNode.getFlooded(), nextNode.getNeighbors(), nonCompletedColors);
+                            } while (0 != forcedColors);
+                            if (false == isFinished) {
+                                nextCostLimit = this.addExternal(nextNode, nonCompletedColors, forcedMoves, numForcedMoves,
+                                        costLimit, nextCostLimit, data, record, keySize, layers, mem);
+                            }
+                            recycleNode = nextNode;
+                            continue;
+                        }
+                        final int prevColorBit = 1 << lastColor;
+                        final boolean isAfterForcedMove = (0 == (nonCompletedColors & prevColorBit));
+                        for (int colors = (nonCompletedColors & ~prevColorBit);  0 != colors;  ) {
+                            final int colorBit = colors & -colors;  // Integer.lowestOneBit(colors);
+                            colors ^= colorBit;
+                            final long[] casColorBit = this.casByColorBits[colorBit];
+                            if (ColorAreaSet.intersects(neighbors, casColorBit)
+                                    && (isAfterForcedMove || this.canPlay(colorBit, this.iterAnd.init(neighbors, casColorBit), currentNode))) {
+                                final AStarNode nextNode = currentNode.copyAndPlay(recycleNode, this.iterAnd.init(neighbors, casColorBit), idsNeighborColorAreaSets, 0);
+                                forcedMoves[0] = (byte)(31 - Integer.numberOfLeadingZeros(colorBit));
+                                nextCostLimit = this.addExternal(nextNode, nonCompletedColors, forcedMoves, 1,
+                                        costLimit, nextCostLimit, data, record, keySize, layers, mem);
+                                recycleNode = nextNode;
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return nextCostLimit;
+    }
+
+    /**
+     * estimate the cost of the node that has been reached by playing the moves after the parent node.
+     * put it into the layer of its solution size if the estimated cost is within the cost limit.
+     * @param nextNode the node, its solution size is still the one of the parent node
+     * @param parentData the record of the parent node
+     * @param record buffer for the record of the node
+     * @return the cost limit of the next iteration
+     */
+    private int addExternal(final AStarNode nextNode, final int nonCompletedColors, final byte[] moves, final int numMoves,
+            final int costLimit, final int nextCostLimit, final long[] parentData, final long[] record, final int keySize,
+            final SortedMap<Integer, AStarExternalMemory.Layer> layers, final AStarExternalMemory mem) throws IOException {
+        // the estimation stops early if the cost is higher than the limit; then it's a lower bound,
+        // which is good enough for the next cost limit.
+        this.strategy.setEstimatedCost(nextNode, nonCompletedColors, costLimit - numMoves);
+        final int nextCost = nextNode.getEstimatedCost() + numMoves;
+        if (nextCost > costLimit) {
+            return Math.min(nextCostLimit, nextCost);
+        }
+        final int solutionSize = nextNode.getSolutionSize();
+        final int nextSolutionSize = solutionSize + numMoves;
+        System.arraycopy(nextNode.getFlooded(), 0, record, 0, keySize);
+        System.arraycopy(parentData, keySize + 1, record, keySize + 1, record.length - keySize - 1);
+        record[keySize] = nextSolutionSize | (moves[numMoves - 1] << 16);
+        for (int i = 0;  i < numMoves;  ++i) {
+            final int index = keySize + 1 + ((solutionSize + i) >> 4), shift = ((solutionSize + i) & 15) << 2;
+            record[index] = (record[index] & ~(0xfL << shift)) | ((long)moves[i] << shift);
+        }
+        final Integer layerKey = Integer.valueOf(nextSolutionSize);
+        AStarExternalMemory.Layer layer = layers.get(layerKey);
+        if (null == layer) {
+            layer = mem.newLayer();
+            layers.put(layerKey, layer);
+        }
+        layer.add(record);
+        return nextCostLimit;
+    }
+
+    /**
+     * the mode with layered closed set: breadth-first iterative deepening,
+     * with the layers ordered by the number of flooded color areas.
+     */
+    private void executeInternalLayered(final ColorArea startCa) throws InterruptedException {
+        final long[] zobristKeys = HashMapLongArray2Byte.makeZobristKeys(this.board);
+        final AStarNode startNode = new AStarNode(this.board, startCa, this.solutionTree, zobristKeys);
+        this.strategy.setEstimatedCost(startNode, this.getNonCompletedColors(startNode.getFlooded()));
+        // the search stops when a solution is found within the cost limit, or when the
+        // cost limit reaches the size of the previous solution (which is optimal then)
+        for (int costLimit = startNode.getEstimatedCost();  (costLimit < this.solutionSize) && (costLimit <= this.maxSearchDepth);  ) {
+            costLimit = this.searchLayered(startCa, costLimit, zobristKeys);
+        }
+    }
+
+    /**
+     * the nodes that have the same number of flooded color areas, and their closed set.
+     */
+    private static class Layer {
+        private final List<AStarNode> nodes = new ArrayList<AStarNode>();
+        private final HashMapLongArray2Byte map;
+
+        private Layer(final Board board, final long[] zobristKeys, final int maxSearchDepth) {
+            this.map = new HashMapLongArray2Byte(board, zobristKeys, false, maxSearchDepth, 1 << 2); // many small maps
+        }
+    }
+
+    /**
+     * one iteration of the mode with layered closed set: expand all nodes, layer by layer,
+     * whose estimated cost is not greater than the cost limit.
+     * @return the cost limit of the next iteration, or the current cost limit if a solution has been found
+     */
+    private int searchLayered(final ColorArea startCa, final int costLimit, final long[] zobristKeys) throws InterruptedException {
+        final AStarNode startNode = new AStarNode(this.board, startCa, this.solutionTree, zobristKeys); // initializes solutionTree
+        final Layer[] layers = new Layer[this.board.getColorAreasArray().length + 1]; // index = number of flooded color areas
+        final Layer startLayer = new Layer(this.board, zobristKeys, this.maxSearchDepth);
+        startLayer.nodes.add(startNode);
+        layers[startNode.getFloodedSize()] = startLayer;
+        final long[][] idsNeighborColorAreaSets = this.board.getNeighborColorAreaSet4IdArray();
+        final byte[] forcedMoves = new byte[Board.MAX_NUMBER_OF_COLORS];
+        AStarNode recycleNode = null;
+        int nextCostLimit = Integer.MAX_VALUE;
+        for (int layerIndex = startNode.getFloodedSize();  layerIndex < layers.length;  ++layerIndex) {
+            final Layer layer = layers[layerIndex];
+            layers[layerIndex] = null; // drop this layer, its nodes can't be reached any more
+            if (null == layer) {
+                continue;
+            }
+            for (final AStarNode currentNode : layer.nodes) {
+                if (Thread.interrupted()) { throw new InterruptedException(); }
+                final long[] flooded = currentNode.getFlooded();
+                if (layer.map.get(currentNode.getHash(), flooded) < currentNode.getSolutionSize()) {
+                    continue; // this node has been reached again with a smaller solution size
+                }
+                int nonCompletedColors = this.getNonCompletedColors(flooded);
+                final long[] neighbors = currentNode.getNeighbors();
+                final int floodedSize = layerIndex;
+                int forcedColors = this.getColorsCompletable(flooded, neighbors, nonCompletedColors);
+                if (0 != forcedColors) {
+                    // a chain of forced moves, like in executeInternalPuchert()
+                    AStarNode nextNode = null;
+                    int numForcedMoves = 0;
+                    boolean isFinished = false;
+                    do {
+                        final int colorBit = forcedColors & -forcedColors;  // Integer.lowestOneBit(forcedColors);
+                        final long[] casColorBit = this.casByColorBits[colorBit];
+                        if (null == nextNode) {
+                            final long nextHash = this.nextHash(currentNode.getHash(), this.iterAnd.init(neighbors, casColorBit), zobristKeys);
+                            nextNode = currentNode.copyAndPlay(recycleNode, this.iterAnd.restart(), idsNeighborColorAreaSets, nextHash);
+                        } else {
+                            nextNode.play(this.iterAnd.init(nextNode.getNeighbors(), casColorBit), idsNeighborColorAreaSets, zobristKeys);
+                        }
+                        forcedMoves[numForcedMoves++] = (byte)(31 - Integer.numberOfLeadingZeros(colorBit));
+                        nonCompletedColors ^= colorBit;
+                        if (0 == (nonCompletedColors & (nonCompletedColors - 1))) { // one or zero colors remaining
+                            final int totalSize = currentNode.getSolutionSize() + numForcedMoves + (0 == nonCompletedColors ? 0 : 1);
+                            if (totalSize <= costLimit) {
+                                for (int i = 0;  i < numForcedMoves;  ++i) {
+                                    nextNode.addSolutionEntry(forcedMoves[i], this.solutionTree);
+                                }
+                                if (0 != nonCompletedColors) {
+                                    nextNode.addSolutionEntry((byte)(31 - Integer.numberOfLeadingZeros(nonCompletedColors)), this.solutionTree);
+                                }
+                                this.addSolution(nextNode.getSolution(this.solutionTree));
+                                return costLimit;
+                            }
+                            nextCostLimit = Math.min(nextCostLimit, totalSize);
+                            isFinished = true;
+                            break;
+                        }
+                        forcedColors = this.getColorsCompletable(nextNode.getFlooded(), nextNode.getNeighbors(), nonCompletedColors);
+                    } while (0 != forcedColors);
+                    recycleNode = nextNode;
+                    if (false == isFinished) {
+                        final Layer nextLayer = this.getLayer(layers, nextNode.getFloodedSize(), zobristKeys);
+                        if (nextLayer.map.putIfLess(nextNode.getHash(), nextNode.getFlooded(), currentNode.getSolutionSize() + numForcedMoves)) {
+                            // the estimation stops early if the cost is higher than the limit; then it's a lower bound,
+                            // which is good enough for the next cost limit.
+                            this.strategy.setEstimatedCost(nextNode, nonCompletedColors, costLimit - numForcedMoves);
+                            final int nextCost = nextNode.getEstimatedCost() + numForcedMoves;
+                            if (nextCost <= costLimit) {
+                                for (int i = 0;  i < numForcedMoves;  ++i) {
+                                    nextNode.addSolutionEntry(forcedMoves[i], this.solutionTree);
+                                }
+                                nextNode.setEstimatedCost(nextCost);
+                                nextLayer.nodes.add(nextNode);
+                                recycleNode = null;
+                            } else {
+                                nextCostLimit = Math.min(nextCostLimit, nextCost);
+                            }
+                        }
+                    }
+                    continue;
+                }
+                final int prevColorBit = 1 << (currentNode.getSolutionEntry() & SolutionTree.COLOR_BIT_MASK);
+                final boolean isAfterForcedMove = (0 == (nonCompletedColors & prevColorBit));
+                final int nextSolutionSize = currentNode.getSolutionSize() + 1;
+                for (int colors = (nonCompletedColors & ~prevColorBit);  0 != colors;  ) {
+                    final int colorBit = colors & -colors;  // Integer.lowestOneBit(colors);
+                    colors ^= colorBit;
+                    final long[] casColorBit = this.casByColorBits[colorBit];
+                    if (ColorAreaSet.intersects(neighbors, casColorBit)
+                            && (isAfterForcedMove || this.canPlay(colorBit, this.iterAnd.init(neighbors, casColorBit), currentNode))) {
+                        final long nextHash = this.nextHash(currentNode.getHash(), this.iterAnd.init(neighbors, casColorBit), zobristKeys);
+                        final Layer nextLayer = this.getLayer(layers, floodedSize + ColorAreaSet.sizeAnd(neighbors, casColorBit), zobristKeys);
+                        if (nextLayer.map.putIfLess(nextHash, flooded, neighbors, casColorBit, nextSolutionSize)) {
+                            final AStarNode nextNode = currentNode.copyAndPlay(recycleNode, this.iterAnd.init(neighbors, casColorBit), idsNeighborColorAreaSets, nextHash);
+                            // the solution entry is added only if the node is stored, to save memory in the SolutionTree.
+                            this.strategy.setEstimatedCost(nextNode, nonCompletedColors, costLimit - 1);
+                            final int nextCost = nextNode.getEstimatedCost() + 1;
+                            if (nextCost <= costLimit) {
+                                nextNode.addSolutionEntry((byte)(31 - Integer.numberOfLeadingZeros(colorBit)), this.solutionTree);
+                                nextNode.setEstimatedCost(nextCost);
+                                nextLayer.nodes.add(nextNode);
+                                recycleNode = null;
+                            } else {
+                                nextCostLimit = Math.min(nextCostLimit, nextCost);
+                                recycleNode = nextNode;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return nextCostLimit;
+    }
+
+    private Layer getLayer(final Layer[] layers, final int floodedSize, final long[] zobristKeys) {
+        Layer layer = layers[floodedSize];
+        if (null == layer) {
+            layer = new Layer(this.board, zobristKeys, this.maxSearchDepth);
+            layers[floodedSize] = layer;
+        }
+        return layer;
+    }
+
+    /**
+     * get the colors that are not completed yet.
+     * (some color areas of such a color are not flooded yet)
+     * @return bitfield of colors
+     */
+    private int getNonCompletedColors(final long[] flooded) {
+        int result = this.casByColorBits.length - 1;
+        for (int colorBit = 1;  colorBit < this.casByColorBits.length;  colorBit <<= 1) {
+            if (ColorAreaSet.containsAll(flooded, this.casByColorBits[colorBit])) {
+                result ^= colorBit;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * partial expansion (PEA*) of the current node, which has no forced move.
+     * only the children with the same estimated cost as the current node are put into the open queue
+     * (on the first expansion also the children with lower cost, in case the heuristic is not consistent),
+     * and the current node is put back with the lowest estimated cost of the remaining children.
+     * @return the node that can be recycled
+     */
+    private AStarNode expandPartial(final AStarNode currentNode, AStarNode recycleNode, final boolean isAfterForcedMove,
+            final int nonCompletedColors, final int prevColorBit, final long[] zobristKeys,
+            final HashMapLongArray2Byte map, final Queue<AStarNode> open) {
+        final long[] flooded = currentNode.getFlooded();
+        final long[] neighbors = currentNode.getNeighbors();
+        final long[][] idsNeighborColorAreaSets = this.board.getNeighborColorAreaSet4IdArray();
+        final int nextSolutionSize = currentNode.getSolutionSize() + 1;
+        final int currentCost = currentNode.getEstimatedCost();
+        final boolean isFirstExpansion = (false == currentNode.isPartiallyExpanded());
+        int nextHigherCost = Integer.MAX_VALUE;
+        for (int colors = (nonCompletedColors & ~prevColorBit);  0 != colors;  ) {
+            final int colorBit = colors & -colors;  // Integer.lowestOneBit(colors);
+            colors ^= colorBit;
+            final long[] casColorBit = this.casByColorBits[colorBit];
+            if (ColorAreaSet.intersects(neighbors, casColorBit)
+                    && (isAfterForcedMove || this.canPlay(colorBit, this.iterAnd.init(neighbors, casColorBit), currentNode))) {
+                final long nextHash = this.nextHash(currentNode.getHash(), this.iterAnd.init(neighbors, casColorBit), zobristKeys);
+                final AStarNode nextNode = currentNode.copyAndPlay(recycleNode, this.iterAnd.restart(), idsNeighborColorAreaSets, nextHash);
+                // the solution entry is added only if the node is put into the open queue, to save memory in the SolutionTree.
+                // so the solution size is not incremented yet, and the estimated cost is one less than the real value.
+                // the estimation stops early if the cost is higher than currentCost; then it's a lower bound,
+                // which is good enough for nextHigherCost.
+                this.strategy.setEstimatedCost(nextNode, nonCompletedColors, currentCost - 1);
+                final int nextCost = nextNode.getEstimatedCost() + 1;
+                if ((nextCost == currentCost) || (isFirstExpansion && (nextCost < currentCost))) {
+                    if (map.putIfLess(nextHash, nextNode.getFlooded(), nextSolutionSize)) {
+                        nextNode.addSolutionEntry((byte)(31 - Integer.numberOfLeadingZeros(colorBit)), this.solutionTree);
+                        nextNode.setEstimatedCost(nextCost);
+                        open.offer(nextNode);
+                        recycleNode = null;
+                        continue;
+                    }
+                } else if ((nextCost > currentCost) && (nextCost < nextHigherCost)) {
+                    nextHigherCost = nextCost;
+                }
+                recycleNode = nextNode; // not used, so it can be recycled
+            }
+        }
+        if (Integer.MAX_VALUE != nextHigherCost) {
+            // put the current node back, the remaining children will be generated when it's polled again
+            currentNode.setEstimatedCost(nextHigherCost);
+            currentNode.setPartiallyExpanded();
+            open.offer(currentNode);
+            return recycleNode;
+        }
+        return currentNode;
+    }
+
+    /**
+     * calculate the Zobrist hash value of the flooded set after the next move.
+     * @param hash hash value of the current flooded set
+     * @param nextColorNeighbors the neighbors that have the color to be played
+     * @param zobristKeys
+     * @return
+     */
+    private long nextHash(long hash, final ColorAreaSet.IteratorAnd nextColorNeighbors, final long[] zobristKeys) {
+        for (int nextColorNeighbor;  (nextColorNeighbor = nextColorNeighbors.nextOrNegative()) >= 0;  ) {
+            hash ^= zobristKeys[nextColorNeighbor];
+        }
+        return hash;
+    }
+
+    /**
+     * get the colors that would be completed by playing them next.
+     * (all color areas of such a color are either flooded already or they are neighbors)
+     * @return bitfield of colors
+     */
+    private int getColorsCompletable(final long[] flooded, final long[] neighbors, final int nonCompletedColors) {
+        int result = 0;
+next:   for (int colors = nonCompletedColors;  0 != colors;  ) {
+            final int colorBit = colors & -colors;  // Integer.lowestOneBit(colors);
+            colors ^= colorBit;
+            final long[] casColorBit = this.casByColorBits[colorBit];
+            for (int i = 0;  i < casColorBit.length;  ++i) {
+                if (0 != (casColorBit[i] & ~(flooded[i] | neighbors[i]))) {
+                    continue next;
+                }
+            }
+            result |= colorBit;
+        }
+        return result;
+    }
+
+
     private boolean printQueueStatistics(final Queue<AStarNode> queue) {
         final SortedMap<Integer, Integer> histogram = new TreeMap<>();
         for (final AStarNode node : queue) {
@@ -215,23 +892,33 @@ next:   for (int nextColorNeighbor;  (nextColorNeighbor = nextColorNeighbors.nex
 
     /**
      * This class stores the moves of all (partial) solutions in a compact way.
+     * <p>
+     * Each entry is a move: the color and a pointer to the entry of the previous move.
+     * The entries are stored in 40 bits (5 bytes) each, in blocks of off-heap memory (direct ByteBuffer),
+     * so they don't burden the garbage collector, and up to 2^36 entries can be stored.
+     * Optionally, the entries that are not needed any more can be removed, see {@link #compact(Iterable)}.
      */
     protected static class SolutionTree {
         // configure this:
-        private static final int MEMORY_BLOCK_SHIFT   = 20;   // 1 << 20 = 1*4 MiB
+        private static final int MEMORY_BLOCK_SHIFT   = 20;   // 1 << 20 = 1 Mi entries = 5 MiB
+        private static final int MAX_RETAINED_MEMORY_BLOCKS = 16; // kept for the next search = 80 MiB
         // derived values:
         private static final int COLOR_BIT_SHIFT      = Integer.SIZE - Integer.numberOfLeadingZeros(Board.MAX_NUMBER_OF_COLORS - 1);
         private static final int COLOR_BIT_MASK       = (1 << COLOR_BIT_SHIFT) - 1;
-        private static final int COLOR_BIT_MASK_INV   = ~COLOR_BIT_MASK;
+        private static final long COLOR_BIT_MASK_INV  = ~(long)COLOR_BIT_MASK;
+        private static final int ENTRY_BYTES          = 5;
+        private static final long ENTRY_MASK          = (1L << (ENTRY_BYTES * Byte.SIZE)) - 1;
+        private static final long MAX_ENTRIES         = 1L << (ENTRY_BYTES * Byte.SIZE - COLOR_BIT_SHIFT);
         private static final int MEMORY_BLOCK_SIZE    = 1 << MEMORY_BLOCK_SHIFT;
         private static final int MEMORY_BLOCK_MASK    = MEMORY_BLOCK_SIZE - 1;
+        private static final int MEMORY_BLOCK_BYTES   = MEMORY_BLOCK_SIZE * ENTRY_BYTES + (Long.BYTES - ENTRY_BYTES); // each entry is accessed as a "long"
 
-        private int[][] memoryBlocks;
-        private int[] nextMemoryBlock;
-        private int numMemoryBlocks, nextEntry, nextEntryOffset;
+        private ByteBuffer[] memoryBlocks = new ByteBuffer[0];
+        private int numMemoryBlocks;
+        private long nextEntry;
 
-        private SolutionTree() {
-            // private constructor
+        SolutionTree() {
+            // package-private constructor, see SolverContext
         }
 
         /**
@@ -239,37 +926,63 @@ next:   for (int nextColorNeighbor;  (nextColorNeighbor = nextColorNeighbors.nex
          * @param color of the starting area
          * @return initial entry
          */
-        protected int init(final byte color) {
+        protected long init(final byte color) {
+            if (0 == this.memoryBlocks.length) {
+                this.memoryBlocks = new ByteBuffer[] { newMemoryBlock() };
+                this.numMemoryBlocks = 1;
+            }
+            // the memory blocks of a previous search are reused by add(), up to a limit
+            this.freeMemoryBlocks(Math.min(this.numMemoryBlocks, MAX_RETAINED_MEMORY_BLOCKS));
             this.numMemoryBlocks = 1;
-            this.memoryBlocks = new int[this.numMemoryBlocks][MEMORY_BLOCK_SIZE];
-            this.nextMemoryBlock = this.memoryBlocks[0];
             this.nextEntry = 0;
-            this.nextEntryOffset = 0;
             return this.add(0, color);
         }
 
+        private static ByteBuffer newMemoryBlock() {
+            return ByteBuffer.allocateDirect(MEMORY_BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * keep the first memory blocks, and leave the others to the garbage collector.
+         * (the off-heap memory of a direct ByteBuffer is released when the ByteBuffer object is collected)
+         */
+        private void freeMemoryBlocks(final int numMemoryBlocks) {
+            Arrays.fill(this.memoryBlocks, numMemoryBlocks, this.memoryBlocks.length, null);
+            this.numMemoryBlocks = numMemoryBlocks;
+        }
+
+        private long get(final long index) {
+            return this.memoryBlocks[(int)(index >>> MEMORY_BLOCK_SHIFT)].getLong(((int)index & MEMORY_BLOCK_MASK) * ENTRY_BYTES) & ENTRY_MASK;
+        }
+
+        private void put(final long index, final long entry) {
+            final ByteBuffer memoryBlock = this.memoryBlocks[(int)(index >>> MEMORY_BLOCK_SHIFT)];
+            final int offset = ((int)index & MEMORY_BLOCK_MASK) * ENTRY_BYTES;
+            // keep the upper bytes, they belong to the next entry
+            memoryBlock.putLong(offset, (memoryBlock.getLong(offset) & ~ENTRY_MASK) | entry);
+        }
+
         /**
          * Add the next move to this SolutionTree.
          * @param previousEntry previous move
          * @param color of the next move
          * @return next entry
          */
-        protected int add(final int previousEntry, final byte color) {
-            final int entry = (previousEntry & COLOR_BIT_MASK_INV) | color;
-            this.nextMemoryBlock[this.nextEntryOffset++] = entry;
-            final int result = (this.nextEntry++ << COLOR_BIT_SHIFT) | color;
-            if (this.nextEntryOffset == MEMORY_BLOCK_SIZE) {
-                if (0 != (Integer.rotateLeft(this.nextEntry, COLOR_BIT_SHIFT) & COLOR_BIT_MASK)) {
+        protected long add(final long previousEntry, final byte color) {
+            if ((this.nextEntry >>> MEMORY_BLOCK_SHIFT) == this.numMemoryBlocks) {
+                if (MAX_ENTRIES == this.nextEntry) {
                     throw new IllegalStateException(this.getClass().getSimpleName() + ".add() : memory capacity exceeded; number of entries stored=" + this.nextEntry);
                 }
                 if (this.memoryBlocks.length <= this.numMemoryBlocks) {
                     this.memoryBlocks = Arrays.copyOf(this.memoryBlocks, this.memoryBlocks.length * 2);
                 }
-                this.nextMemoryBlock = new int[MEMORY_BLOCK_SIZE];
-                this.memoryBlocks[this.numMemoryBlocks++] = this.nextMemoryBlock;
-                this.nextEntryOffset = 0;
+                if (null == this.memoryBlocks[this.numMemoryBlocks]) {
+                    this.memoryBlocks[this.numMemoryBlocks] = newMemoryBlock();
+                }
+                ++this.numMemoryBlocks;
             }
-            return result;
+            this.put(this.nextEntry, (previousEntry & COLOR_BIT_MASK_INV) | color);
+            return (this.nextEntry++ << COLOR_BIT_SHIFT) | color;
         }
 
         /**
@@ -278,100 +991,292 @@ next:   for (int nextColorNeighbor;  (nextColorNeighbor = nextColorNeighbors.nex
          * @param size of solution
          * @return array of moves
          */
-        protected byte[] materialize(int entry, final int size) {
+        protected byte[] materialize(long entry, final int size) {
             final byte[] result = new byte[size];
             for (int i = size - 1;  i >= 0;  --i) {
-                final int index = (entry >>> COLOR_BIT_SHIFT);
-                entry = this.memoryBlocks[index >>> MEMORY_BLOCK_SHIFT][index & MEMORY_BLOCK_MASK];
+                entry = this.get(entry >>> COLOR_BIT_SHIFT);
                 result[i] = (byte)(entry & COLOR_BIT_MASK);
             }
             return result;
         }
+
+        /**
+         * get the number of entries stored.
+         * @return
+         */
+        protected long size() {
+            return this.nextEntry;
+        }
+
+        /**
+         * Remove all entries that are not needed by these nodes, i.e. the entries of
+         * dead branches, which are not part of the solution of any of these nodes.
+         * The solution entries of the nodes are updated.
+         * @param nodes all nodes that are still in use, for example the open queue
+         */
+        protected void compact(final Iterable<AStarNode> nodes) {
+            // mark the entries that are used, from each node back to the initial entry
+            final long[] marks = new long[(int)((this.nextEntry + 63) >>> 6)];
+            marks[0] = 1L; // the initial entry
+            for (final AStarNode node : nodes) {
+                for (long index = node.getSolutionEntry() >>> COLOR_BIT_SHIFT;  0 == (marks[(int)(index >>> 6)] & (1L << index));  ) {
+                    marks[(int)(index >>> 6)] |= 1L << index;
+                    index = this.get(index) >>> COLOR_BIT_SHIFT;
+                }
+            }
+            // the new index of each marked entry is the number of marked entries before it
+            final long[] ranks = new long[marks.length];
+            long numEntries = 0;
+            for (int i = 0;  i < marks.length;  ++i) {
+                ranks[i] = numEntries;
+                numEntries += Long.bitCount(marks[i]);
+            }
+            // move the entries, in ascending order. the new index is never greater than the old index,
+            // and the previous entry is always moved before the entry that points to it.
+            for (int i = 0;  i < marks.length;  ++i) {
+                for (long buf = marks[i];  0 != buf;  buf &= buf - 1) {
+                    final long index = ((long)i << 6) + Long.numberOfTrailingZeros(buf);
+                    final long entry = this.get(index);
+                    final long previousIndex = newIndex(entry >>> COLOR_BIT_SHIFT, marks, ranks);
+                    this.put(newIndex(index, marks, ranks), (previousIndex << COLOR_BIT_SHIFT) | (entry & COLOR_BIT_MASK));
+                }
+            }
+            for (final AStarNode node : nodes) {
+                final long entry = node.getSolutionEntry();
+                node.setSolutionEntry((newIndex(entry >>> COLOR_BIT_SHIFT, marks, ranks) << COLOR_BIT_SHIFT) | (entry & COLOR_BIT_MASK));
+            }
+            this.nextEntry = numEntries;
+            this.freeMemoryBlocks(Math.max(1, (int)((numEntries + MEMORY_BLOCK_MASK) >>> MEMORY_BLOCK_SHIFT)));
+        }
+
+        private static long newIndex(final long index, final long[] marks, final long[] ranks) {
+            final int i = (int)(index >>> 6);
+            return ranks[i] + Long.bitCount(marks[i] & ((1L << index) - 1));
+        }
     }
 
 
     /**
      * This class is a minimal implementation of a HashMap, taylored to the specific use case in this AStarSolver,
      * with the aim of being faster and more efficient than the generic Java HashMap.
-     * The data type of its keys is "fixed-size array of long" and its values are of type "byte".
-     * Some simple and well-known methods are used: open addressing with linear probing and MurmurHash3-derived hashing (or tabulation hashing).
+     * The data type of its keys is "fixed-size array of long" and its values are small positive integers (see below).
+     * Some simple and well-known methods are used: open addressing with linear probing and Zobrist hashing.
+     * <p>
+     * The Zobrist hash value of a key is the XOR of the random numbers of all color areas contained in the key.
+     * Because a move only adds color areas to the flooded set, the hash value of a child node can be computed
+     * incrementally from the hash value of its parent node, before the child node is actually created.
+     * <p>
+     * The map is split into segments, which grow independently, so a resize never copies the whole map at once.
+     * A 32-bit fingerprint of the hash value is stored with each key: it rejects most mismatches without
+     * reading the key, and it determines the new slot when a segment is resized, without rehashing the key.
+     * <p>
+     * In the "lossy" mode, only the 64-bit hash value is stored instead of the key, which needs much less memory
+     * on large boards. Two different keys with the same hash value are then treated as the same key,
+     * so this mode may prune a valid path, with a very small probability. The solution is still valid then,
+     * but it may not be optimal.
+     * <p>
+     * The values are stored in one byte, up to 255. If larger values are needed, on very large boards,
+     * then the "wide" mode adds a second byte, and the values are stored in 15 bits:
+     * the lower 7 bits in the first byte, together with a set bit 7, so that it's never zero (an empty slot),
+     * and the upper 8 bits in the second byte. The probing of the table is the same in both modes.
      */
-    private static class HashMapLongArray2Byte {
+    static class HashMapLongArray2Byte {
         private final double LOAD_FACTOR = 0.9; // CONFIGURE THIS
-        private final int KEY_SIZE; // number of "long" elements in each key
-//        private final int[][] hashLookup; // lookup tables for tabulation hashing
-        private long[] tableKeys;   // the table of keys
-        private byte[] tableValues; // the table of values corresponding to the keys
-        private int size;           // current number of data records stored in this map
-        private int maxSize;        // maximum number of data records that can be stored before table size must be increased
-        private int mask;           // bit mask based on current table size
+        private static final int SEGMENT_BITS = 8; // the table is split into 2^SEGMENT_BITS segments  CONFIGURE THIS
+        private static final int MAX_RETAINED_SEGMENT_SIZE = 1 << 12; // larger segments are not kept by clear()  CONFIGURE THIS
+        private final int KEY_SIZE; // number of "long" elements in each key (stored in the table)
+        private final boolean lossy; // store the 64-bit hash value only, instead of the key
+        private long[] zobristKeys; // random numbers for Zobrist hashing, indexed by ColorArea ID
+        private final int initialSegmentSize;
+        // each segment is a separate hash table, which grows independently from the other segments.
+        // the segment is selected by the upper bits of the hash value, the slot in the segment by the lower bits.
+        private final long[][] tableKeys;   // the tables of keys
+        private final byte[][] tableValues; // the tables of values corresponding to the keys
+        private final byte[][] tableValuesHigh; // wide mode: the tables of the upper 8 bits of the values; null otherwise
+        private final int[][] tableFingerprints; // the tables of fingerprints (lower 32 bits of hash value) of the keys
+        private final int[] size;           // current number of data records stored in each segment
+        private final int[] maxSize;        // maximum number of data records that can be stored before segment size must be increased
+        private final int[] mask;           // bit mask based on current segment size
 
         /**
          * constructor
+         * @param board
+         * @param zobristKeys random numbers for Zobrist hashing, indexed by ColorArea ID
+         * @param lossy true = store only the 64-bit hash value instead of the key
+         * @param maxValue the maximum value that will be stored
+         */
+        public HashMapLongArray2Byte(final Board board, final long[] zobristKeys, final boolean lossy, final int maxValue) {
+            this(board, zobristKeys, lossy, maxValue, 1 << 8); // CONFIGURE THIS
+        }
+
+        /**
+         * constructor
+         * @param board
+         * @param zobristKeys random numbers for Zobrist hashing, indexed by ColorArea ID
+         * @param lossy true = store only the 64-bit hash value instead of the key
+         * @param maxValue the maximum value that will be stored, selects the wide mode if greater than 255
+         * @param initialSegmentSize initial number of slots in each segment, must be a power of two
+         */
+        public HashMapLongArray2Byte(final Board board, final long[] zobristKeys, final boolean lossy, final int maxValue, final int initialSegmentSize) {
+            assert Integer.bitCount(initialSegmentSize) == 1 : "initialSegmentSize must be a power of two";
+            assert maxValue <= AStarNode.MAX_VALUE;
+            final boolean wide = (maxValue > 0xff);
+            this.lossy = lossy;
+            this.KEY_SIZE = keySize(board, lossy);
+            this.zobristKeys = zobristKeys;
+            this.initialSegmentSize = initialSegmentSize;
+            final int numSegments = 1 << SEGMENT_BITS;
+            this.tableKeys = new long[numSegments][];
+            this.tableValues = new byte[numSegments][];
+            this.tableValuesHigh = (wide ? new byte[numSegments][] : null);
+            this.tableFingerprints = new int[numSegments][];
+            this.size = new int[numSegments];
+            this.maxSize = new int[numSegments];
+            this.mask = new int[numSegments];
+            for (int segment = 0;  segment < numSegments;  ++segment) {
+                this.newSegment(segment);
+            }
+        }
+
+        private static int keySize(final Board board, final boolean lossy) {
+            return (lossy ? 1 : ColorAreaSet.arrayLength(board));
+        }
+
+        /**
+         * allocate the tables of this segment, with the initial size.
+         */
+        private void newSegment(final int segment) {
+            this.tableKeys[segment] = new long[this.initialSegmentSize * this.KEY_SIZE];
+            this.tableValues[segment] = new byte[this.initialSegmentSize];
+            if (null != this.tableValuesHigh) {
+                this.tableValuesHigh[segment] = new byte[this.initialSegmentSize];
+            }
+            this.tableFingerprints[segment] = (this.lossy ? null : new int[this.initialSegmentSize]); // lossy: fingerprint is part of stored hash value
+            this.size[segment] = 0;
+            this.maxSize[segment] = (int)(this.initialSegmentSize * this.LOAD_FACTOR);
+            this.mask[segment] = this.initialSegmentSize - 1;
+        }
+
+        /**
+         * check if this map can be used for the other board, after {@link #clear(long[])}.
+         * @param board
+         * @param lossy
+         * @param maxValue
+         * @return true if the key size and the mode are the same
+         */
+        boolean isCompatible(final Board board, final boolean lossy, final int maxValue) {
+            return (this.lossy == lossy) && (this.KEY_SIZE == keySize(board, lossy))
+                    && ((null != this.tableValuesHigh) == (maxValue > 0xff));
+        }
+
+        /**
+         * remove all entries. the tables are kept for reuse, except for very large segments,
+         * which are replaced by new segments of the initial size.
+         * (the keys are not cleared, because a slot is empty if its value is zero)
+         * @param zobristKeys random numbers for Zobrist hashing, indexed by ColorArea ID
+         */
+        void clear(final long[] zobristKeys) {
+            this.zobristKeys = zobristKeys;
+            for (int segment = 0;  segment < this.tableValues.length;  ++segment) {
+                if (this.tableValues[segment].length > MAX_RETAINED_SEGMENT_SIZE) {
+                    this.newSegment(segment);
+                } else {
+                    Arrays.fill(this.tableValues[segment], (byte)0);
+                    this.size[segment] = 0;
+                }
+            }
+        }
+
+        /**
+         * create the random numbers for Zobrist hashing.
+         * @param board
+         * @return array of random numbers, indexed by ColorArea ID
          */
-        public HashMapLongArray2Byte(final Board board) {
-            this.KEY_SIZE = (board.getSizeColorAreas8() + 7) >> 3;
-            final int initialTableSize = 1 << 16; // must be a power of two! CONFIGURE THIS
-            this.tableKeys = new long[initialTableSize * this.KEY_SIZE];
-            this.tableValues = new byte[initialTableSize];
-            this.size = 0;
-            this.maxSize = (int)(this.tableValues.length * this.LOAD_FACTOR);
-            this.mask = this.tableValues.length - 1;
-//            this.hashLookup = new int[Long.BYTES * this.KEY_SIZE][1 << Byte.SIZE]; // tabulation hashing - split key into bytes
-//            final long seed = Double.doubleToLongBits(Math.PI); // arbitrary, constant seed for random number generator
-//            final java.util.Random random = new java.util.Random(seed); // constant seed = same pseudo-random values in each run
-//            for (int y = 0, ym = this.hashLookup[0].length;  y < ym;  ++y) {
-//                for (int x = 0, xm = this.hashLookup.length;  x < xm;  ++x) {
-//                    this.hashLookup[x][y] = random.nextInt();
-//                }
-//            }
+        public static long[] makeZobristKeys(final Board board) {
+            final long seed = Double.doubleToLongBits(Math.PI); // arbitrary, constant seed for random number generator
+            final java.util.Random random = new java.util.Random(seed); // constant seed = same pseudo-random values in each run
+            final long[] result = new long[board.getColorAreasArray().length];
+            for (int i = 0;  i < result.length;  ++i) {
+                result[i] = random.nextLong();
+            }
+            return result;
         }
 
         /**
          * try to put this key-value pair into the map. this will succeed if the key was not present
          * in the map before or if the new value is less than the previously stored value for the key.
+         * @param hash the Zobrist hash value of the key
          * @param key must be the internal array of a ColorAreaSet of the Board that was used as the constructor parameter
          * @param value must be greater than zero and less than 256
          * @return true if the key-value pair was stored, false if it was stored before with the same or a lower value.
          */
-        public boolean putIfLess(final long[] newKey, final int newValue) {
-            assert newKey.length == this.KEY_SIZE;
+        public boolean putIfLess(final long hash, final long[] key, final int newValue) {
+            assert hash == this.hash(key) : "incremental hash value is not correct";
+            return this.putIfLess(hash, key, key, key, newValue); // key | (key & key) == key
+        }
+
+        /**
+         * try to put this key-value pair into the map. this will succeed if the key was not present
+         * in the map before or if the new value is less than the previously stored value for the key.
+         * <p>
+         * the key is not given as an array, instead it is combined on the fly from three arrays:
+         * key = keyBase | (keyAdd & keyAddMask)
+         * (that is: flooded | (neighbors & colorAreasOfNextColor) = flooded set of the child node)
+         * so the key array does not have to be created before the map is probed.
+         * @param hash the Zobrist hash value of the key
+         * @param keyBase must be the internal array of a ColorAreaSet of the Board that was used as the constructor parameter
+         * @param keyAdd must be the internal array of a ColorAreaSet of the Board that was used as the constructor parameter
+         * @param keyAddMask must be the internal array of a ColorAreaSet of the Board that was used as the constructor parameter
+         * @param value must be greater than zero and less than 256
+         * @return true if the key-value pair was stored, false if it was stored before with the same or a lower value.
+         */
+        public boolean putIfLess(final long hash, final long[] keyBase, final long[] keyAdd, final long[] keyAddMask, final int newValue) {
+            if (this.lossy) {
+                return this.putIfLessLossy(hash, newValue);
+            }
+            assert keyBase.length == this.KEY_SIZE;
             assert newValue > 0;
-            final int hash = this.hash(newKey, 0);
-            int indexValues = hash & this.mask;
+            final int segment = (int)(hash >>> (Long.SIZE - SEGMENT_BITS));
+            final long[] segmentKeys = this.tableKeys[segment];
+            final byte[] segmentValues = this.tableValues[segment];
+            final int[] segmentFingerprints = this.tableFingerprints[segment];
+            final int segmentMask = this.mask[segment];
+            final int fingerprint = (int)hash;
+            int indexValues = fingerprint & segmentMask;
             int oldValue;
-            while ((oldValue = this.tableValues[indexValues]) != 0) {
+            while ((oldValue = segmentValues[indexValues]) != 0) {
                 // found an existing entry, now check if it's our key
-                boolean matchesKey = true;
+                // (compare the fingerprint first, so that most mismatches don't need to read the key)
+                boolean matchesKey = (fingerprint == segmentFingerprints[indexValues]);
                 int indexKeys = indexValues * this.KEY_SIZE;
-                for (final long newKeyElement : newKey) {
-                    if (newKeyElement != this.tableKeys[indexKeys++]) {
+                for (int i = 0;  matchesKey && (i < this.KEY_SIZE);  ++i) {
+                    if ((keyBase[i] | (keyAdd[i] & keyAddMask[i])) != segmentKeys[indexKeys++]) {
                         matchesKey = false;
-                        break; // for
                     }
                 }
                 if (matchesKey) {
                     break; // while
                 } else {
-                    indexValues = (indexValues + 1) & this.mask;
+                    indexValues = (indexValues + 1) & segmentMask;
                 }
             }
             if (0 == oldValue) {
                 // key not present yet
                 // -> add new entry
                 int indexKeys = indexValues * this.KEY_SIZE;
-                for (final long newKeyElement : newKey) {
-                    this.tableKeys[indexKeys++] = newKeyElement;
+                for (int i = 0;  i < this.KEY_SIZE;  ++i) {
+                    segmentKeys[indexKeys++] = keyBase[i] | (keyAdd[i] & keyAddMask[i]);
                 }
-                this.tableValues[indexValues] = (byte)newValue;
-                if (++this.size > this.maxSize) {
-                    this.increaseSize();
+                this.setValue(segmentValues, segment, indexValues, newValue);
+                segmentFingerprints[indexValues] = fingerprint;
+                if (++this.size[segment] > this.maxSize[segment]) {
+                    this.increaseSize(segment);
                 }
                 return true;
-            } else if (newValue < (oldValue & 0xff)) {
+            } else if (newValue < this.getValue(oldValue, segment, indexValues)) {
                 // entry present and new value is less than old value
                 // -> update entry
-                this.tableValues[indexValues] = (byte)newValue;
+                this.setValue(segmentValues, segment, indexValues, newValue);
                 return true;
             } else {
                 // entry present and new value is same or greater than old value
@@ -381,136 +1286,160 @@ next:   for (int nextColorNeighbor;  (nextColorNeighbor = nextColorNeighbors.nex
         }
 
         /**
-         * calculate the 32bit hash value of the array of long.
+         * get the value that is stored for this key.
+         * @param hash the Zobrist hash value of the key
+         * @param key must be the internal array of a ColorAreaSet of the Board that was used as the constructor parameter
+         * @return the value, or zero if the key is not present in the map
+         */
+        public int get(final long hash, final long[] key) {
+            assert false == this.lossy;
+            final int segment = (int)(hash >>> (Long.SIZE - SEGMENT_BITS));
+            final long[] segmentKeys = this.tableKeys[segment];
+            final byte[] segmentValues = this.tableValues[segment];
+            final int[] segmentFingerprints = this.tableFingerprints[segment];
+            final int segmentMask = this.mask[segment];
+            final int fingerprint = (int)hash;
+            int indexValues = fingerprint & segmentMask;
+            int value;
+            while ((value = segmentValues[indexValues]) != 0) {
+                boolean matchesKey = (fingerprint == segmentFingerprints[indexValues]);
+                int indexKeys = indexValues * this.KEY_SIZE;
+                for (int i = 0;  matchesKey && (i < this.KEY_SIZE);  ++i) {
+                    if (key[i] != segmentKeys[indexKeys++]) {
+                        matchesKey = false;
+                    }
+                }
+                if (matchesKey) {
+                    return this.getValue(value, segment, indexValues);
+                }
+                indexValues = (indexValues + 1) & segmentMask;
+            }
+            return 0;
+        }
+
+        /**
+         * the "lossy" variant of putIfLess: the 64-bit hash value is stored and compared instead of the key.
+         */
+        private boolean putIfLessLossy(final long hash, final int newValue) {
+            assert newValue > 0;
+            final int segment = (int)(hash >>> (Long.SIZE - SEGMENT_BITS));
+            final long[] segmentKeys = this.tableKeys[segment];
+            final byte[] segmentValues = this.tableValues[segment];
+            final int segmentMask = this.mask[segment];
+            int indexValues = (int)hash & segmentMask;
+            int oldValue;
+            while ((oldValue = segmentValues[indexValues]) != 0) {
+                if (hash == segmentKeys[indexValues]) {
+                    break; // while
+                }
+                indexValues = (indexValues + 1) & segmentMask;
+            }
+            if (0 == oldValue) {
+                segmentKeys[indexValues] = hash;
+                this.setValue(segmentValues, segment, indexValues, newValue);
+                if (++this.size[segment] > this.maxSize[segment]) {
+                    this.increaseSize(segment);
+                }
+                return true;
+            } else if (newValue < this.getValue(oldValue, segment, indexValues)) {
+                this.setValue(segmentValues, segment, indexValues, newValue);
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        /**
+         * get the value that is stored in this slot.
+         * @param lowValue the content of tableValues in this slot
          */
-//        private int hash(final long[] key, final int startIndex) {
-//            // tabulation hashing
-//            int result = 0;
-//            for (int i = 0, k = startIndex, km = startIndex + this.KEY_SIZE;  k < km;  ++k, i += Long.BYTES) {
-//                // manually unrolled loop that processes the 8 bytes of each long.
-//                // the compiler might be able to optimize this code for a speedup.
-//                final long l = key[k];
-//                final int h0 = this.hashLookup[ i     ][ (int)(l                    ) & 0xff ];
-//                final int h1 = this.hashLookup[ i + 1 ][ (int)(l >>> (1 * Byte.SIZE)) & 0xff ];
-//                final int h2 = this.hashLookup[ i + 2 ][ (int)(l >>> (2 * Byte.SIZE)) & 0xff ];
-//                final int h3 = this.hashLookup[ i + 3 ][ (int)(l >>> (3 * Byte.SIZE)) & 0xff ];
-//                final int h4 = this.hashLookup[ i + 4 ][ (int)(l >>> (4 * Byte.SIZE)) & 0xff ];
-//                final int h5 = this.hashLookup[ i + 5 ][ (int)(l >>> (5 * Byte.SIZE)) & 0xff ];
-//                final int h6 = this.hashLookup[ i + 6 ][ (int)(l >>> (6 * Byte.SIZE)) & 0xff ];
-//                final int h7 = this.hashLookup[ i + 7 ][ (int)(l >>> (7 * Byte.SIZE))        ];
-//                result ^= h0 ^ h1 ^ h2 ^ h3 ^ h4 ^ h5 ^ h6 ^ h7;
-//            }
-//            return result;
-//        }
-        private int hash(final long[] key, final int startIndex) {
-            // based on MurmurHash3_x86_32
-            int h1 = 12345; // seed
-            for (int k = startIndex, km = startIndex + this.KEY_SIZE;  k < km;  ++k) {
-                final long l = key[k];
-                int k1 = (int)l;
-                k1 *= 0xcc9e2d51;
-                k1 = Integer.rotateLeft(k1, 15);
-                k1 *= 0x1b873593;
-                h1 ^= k1;
-                h1 = Integer.rotateLeft(h1, 13);
-                h1 = h1 * 5 + 0xe6546b64;
-                k1 = (int)(l >>> 32);
-                k1 *= 0xcc9e2d51;
-                k1 = Integer.rotateLeft(k1, 15);
-                k1 *= 0x1b873593;
-                h1 ^= k1;
-                h1 = Integer.rotateLeft(h1, 13);
-                h1 = h1 * 5 + 0xe6546b64;
-            }
-            h1 ^= h1 >>> 16;
-            h1 *= 0x85ebca6b;
-            h1 ^= h1 >>> 13;
-            h1 *= 0xc2b2ae35;
-            h1 ^= h1 >>> 16;
-            return h1;
-        }
-//        // based on XXHash32
-//        // https://github.com/lz4/lz4-java
-//        // https://github.com/richardstartin/xxhash-benchmark
-//        private static final int PRIME1 = 0x9E3779B1;
-//        private static final int PRIME2 = 0x85EBCA77;
-//        private static final int PRIME3 = 0xC2B2AE3D;
-//        private static final int PRIME4 = 0x27D4EB2F;
-//        private static final int PRIME5 = 0x165667B1;
-//        private static final int seed = 12345;
-//        private int hash(final long[] key, final int startIndex) {
-//            int h32;
-//            int k = startIndex;
-//            final int km = startIndex + this.KEY_SIZE;
-//            if (this.KEY_SIZE >= 2) { // operate on 4 streams of 32 bits in parallel
-//                int v1 = seed + PRIME1 + PRIME2;
-//                int v2 = seed + PRIME2;
-//                int v3 = seed;
-//                int v4 = seed - PRIME1;
-//                do {
-//                    final long l1 = key[k++];
-//                    v1 += (int)(l1) * PRIME2;
-//                    v1 = Integer.rotateLeft(v1, 13);
-//                    v1 *= PRIME1;
-//                    v2 += (int)(l1 >>> 32) * PRIME2;
-//                    v2 = Integer.rotateLeft(v2, 13);
-//                    v2 *= PRIME1;
-//                    final long l2 = key[k++];
-//                    v3 += (int)(l2) * PRIME2;
-//                    v3 = Integer.rotateLeft(v3, 13);
-//                    v3 *= PRIME1;
-//                    v4 += (int)(l2 >>> 32) * PRIME2;
-//                    v4 = Integer.rotateLeft(v4, 13);
-//                    v4 *= PRIME1;
-//                } while (k < km - 1);
-//                h32 = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
-//            } else {
-//                h32 = seed + PRIME5;
-//            }
-//            while (k < km) {
-//                final long l = key[k++];
-//                h32 += (int)(l) * PRIME3;
-//                h32 = Integer.rotateLeft(h32, 17) * PRIME4;
-//                h32 += (int)(l >>> 32) * PRIME3;
-//                h32 = Integer.rotateLeft(h32, 17) * PRIME4;
-//            }
-//            h32 ^= h32 >>> 15;
-//            h32 *= PRIME2;
-//            h32 ^= h32 >>> 13;
-//            h32 *= PRIME3;
-//            h32 ^= h32 >>> 16;
-//            return h32;
-//        }
+        private int getValue(final int lowValue, final int segment, final int indexValues) {
+            if (null == this.tableValuesHigh) {
+                return lowValue & 0xff;
+            } else {
+                return (lowValue & 0x7f) | ((this.tableValuesHigh[segment][indexValues] & 0xff) << 7);
+            }
+        }
 
         /**
-         * double the storage space in the internal tables
+         * store the value in this slot.
          */
-        private void increaseSize() {
+        private void setValue(final byte[] segmentValues, final int segment, final int indexValues, final int value) {
+            if (null == this.tableValuesHigh) {
+                segmentValues[indexValues] = (byte)value;
+            } else {
+                segmentValues[indexValues] = (byte)(value | 0x80); // never zero, which is an empty slot
+                this.tableValuesHigh[segment][indexValues] = (byte)(value >>> 7);
+            }
+        }
+
+        /**
+         * calculate the Zobrist hash value of the key from scratch.
+         * (not needed for resizing, because of the stored fingerprints; used only to check the incremental hash values)
+         */
+        private long hash(final long[] key) {
+            // Zobrist hashing: XOR of the random keys of all color areas in the set.
+            // (this is the same value that AStarSolver computes incrementally for each node)
+            long result = 0;
+            for (int k = 0, offset = 0;  k < key.length;  ++k, offset += 64) {
+                long buf = key[k];
+                while (buf != 0) {
+                    final long l1b = buf & -buf; // Long.lowestOneBit
+                    result ^= this.zobristKeys[offset + Long.numberOfTrailingZeros(l1b)];
+                    buf ^= l1b;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * double the storage space in the internal tables of one segment.
+         * <p>
+         * only this segment is copied, so the pause and the temporary memory overhead
+         * are limited to a small fraction of the whole map. the keys are not rehashed,
+         * the new slot is determined by the stored fingerprint.
+         */
+        private void increaseSize(final int segment) {
             // allocate new tables, twice as large as the current ones
-            final long[] oldTableKeys = this.tableKeys;
-            this.tableKeys = new long[oldTableKeys.length << 1];
-            final byte[] oldTableValues = this.tableValues;
-            this.tableValues = new byte[oldTableValues.length << 1];
-            this.maxSize = (int)(this.tableValues.length * this.LOAD_FACTOR);
-            this.mask = this.tableValues.length - 1;
+            final long[] oldTableKeys = this.tableKeys[segment];
+            final byte[] oldTableValues = this.tableValues[segment];
+            final int[] oldTableFingerprints = this.tableFingerprints[segment];
+            final long[] newTableKeys = new long[oldTableKeys.length << 1];
+            final byte[] newTableValues = new byte[oldTableValues.length << 1];
+            final int[] newTableFingerprints = (this.lossy ? null : new int[oldTableFingerprints.length << 1]);
+            final byte[] oldTableValuesHigh = (null == this.tableValuesHigh ? null : this.tableValuesHigh[segment]);
+            final byte[] newTableValuesHigh = (null == oldTableValuesHigh ? null : new byte[newTableValues.length]);
+            final int newMask = newTableValues.length - 1;
             // add all entries to the new tables
             int oldIndexKeys = 0;
-            for (final byte value : oldTableValues) {
+            for (int oldIndexValues = 0;  oldIndexValues < oldTableValues.length;  ++oldIndexValues) {
+                final byte value = oldTableValues[oldIndexValues];
                 if (value != 0) {
-                    final int hash = this.hash(oldTableKeys, oldIndexKeys);
-                    int newIndexValues = hash & this.mask;
-                    while (this.tableValues[newIndexValues] != 0) {
+                    final int fingerprint = (this.lossy ? (int)oldTableKeys[oldIndexKeys] : oldTableFingerprints[oldIndexValues]);
+                    int newIndexValues = fingerprint & newMask;
+                    while (newTableValues[newIndexValues] != 0) {
                         // there can't be any duplicate keys, so just skip all occupied slots
-                        newIndexValues = (newIndexValues + 1) & this.mask;
+                        newIndexValues = (newIndexValues + 1) & newMask;
                     }
-                    final int newIndexKeys = newIndexValues * this.KEY_SIZE;
-                    for (int i = 0;  i < this.KEY_SIZE;  ++i) {
-                        this.tableKeys[newIndexKeys + i] = oldTableKeys[oldIndexKeys + i];
+                    System.arraycopy(oldTableKeys, oldIndexKeys, newTableKeys, newIndexValues * this.KEY_SIZE, this.KEY_SIZE);
+                    newTableValues[newIndexValues] = value;
+                    if (null != newTableFingerprints) {
+                        newTableFingerprints[newIndexValues] = fingerprint;
+                    }
+                    if (null != newTableValuesHigh) {
+                        newTableValuesHigh[newIndexValues] = oldTableValuesHigh[oldIndexValues];
                     }
-                    this.tableValues[newIndexValues] = value;
                 }
                 oldIndexKeys += this.KEY_SIZE;
             }
+            this.tableKeys[segment] = newTableKeys;
+            this.tableValues[segment] = newTableValues;
+            this.tableFingerprints[segment] = newTableFingerprints;
+            if (null != newTableValuesHigh) {
+                this.tableValuesHigh[segment] = newTableValuesHigh;
+            }
+            this.maxSize[segment] = (int)(newTableValues.length * this.LOAD_FACTOR);
+            this.mask[segment] = newMask;
         }
     }
 }
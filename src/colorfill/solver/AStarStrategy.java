@@ -27,4 +27,23 @@ public interface AStarStrategy extends Strategy {
      * @param node
      */
     public void setEstimatedCost(final AStarNode node, int nonCompletedColors);
+
+    /**
+     * update the given node with its cost, which is estimated by this strategy.
+     * the estimation may stop early, as soon as the cost is known to be greater than maxCost;
+     * in this case the cost is a lower bound only, which is still greater than maxCost,
+     * and the node is marked with {@link AStarNode#isEstimatePending()}.
+     * <p>
+     * AStarSolver gives a limit only in its partial expansion, layered and external memory modes;
+     * in the default mode it calls {@link #setEstimatedCost(AStarNode, int)}, so the estimation never stops early.
+     * @param node
+     * @param maxCost
+     */
+    public void setEstimatedCost(final AStarNode node, int nonCompletedColors, int maxCost);
+
+    /**
+     * get some info from the strategy, like statistics after solver has finished.
+     * @return some info, may be null or empty if the particular strategy has nothing to say.
+     */
+    public String getInfo();
 }
@@ -32,6 +32,7 @@ public abstract class AbstractSolver implements Solver {
     protected final Board board;
     protected final List<Solution> solutions = new ArrayList<Solution>();
     protected int solutionSize = Integer.MAX_VALUE;
+    private boolean polish = false; // CONFIGURE THIS
 
     /**
      * create a new solver.
@@ -40,11 +41,26 @@ public abstract class AbstractSolver implements Solver {
      * @return
      */
     public static Solver createSolver(final Class<? extends Strategy> strategyClass, final Board board) {
+        return createSolver(strategyClass, board, null);
+    }
+
+    /**
+     * create a new solver, which reuses the memory of the previous solver.
+     * @param strategyClass strategy to be used
+     * @param board to be solved
+     * @param context memory reused from the previous board, or null; see {@link SolverContext}
+     * @return
+     */
+    public static Solver createSolver(final Class<? extends Strategy> strategyClass, final Board board, final SolverContext context) {
         final AbstractSolver solver;
         if (DfsStrategy.class.isAssignableFrom(strategyClass)) {
-            solver = new DfsSolver(board);
+            solver = new DfsSolver(board, context);
         } else if (AStarStrategy.class.isAssignableFrom(strategyClass)) {
-            solver = new AStarSolver(board);
+            solver = new AStarSolver(board, context);
+        } else if (LookaheadStrategy.class.isAssignableFrom(strategyClass)) {
+            solver = new LookaheadSolver(board);
+        } else if (MctsStrategy.class.isAssignableFrom(strategyClass)) {
+            solver = new MctsSolver(board);
         } else {
             throw new IllegalArgumentException("unsupported strategy class " + strategyClass.getName());
         }
@@ -62,6 +78,18 @@ public abstract class AbstractSolver implements Solver {
         return solver.getSolverName();
     }
 
+    /**
+     * get the maximum search depth for this board.
+     * the number of moves can't be greater than the number of color areas,
+     * so this is MAX_SEARCH_DEPTH on all but very large boards.
+     * this is a very loose bound, it's used to size the arrays of the solution.
+     * @param board
+     * @return maximum number of moves
+     */
+    protected static int getMaxSearchDepth(final Board board) {
+        return Math.max(MAX_SEARCH_DEPTH, board.getColorAreasArray().length);
+    }
+
     /**
      * store the Board reference.
      * @param board to be solved
@@ -70,6 +98,19 @@ public abstract class AbstractSolver implements Solver {
         this.board = board;
     }
 
+    /**
+     * select the polishing of the solution.
+     * <p>
+     * when the solver has finished, some local changes of the solution are tried: dropping and swapping moves,
+     * and replacing short sequences of moves by a small exact search, see {@link SolutionPolisher}.
+     * this is cheap, and it often makes the solutions of the strategies that don't search completely
+     * one or two moves shorter. it's not useful for the strategies that find optimal solutions.
+     * @param polish true = polish the solution, false = don't polish it (default)
+     */
+    public void setPolish(final boolean polish) {
+        this.polish = polish;
+    }
+
     /**
      * the actual solver main method, to be implemented by descendants of this class.
      * should call {@link #addSolution(List)} to collect the solution(s).
@@ -93,6 +134,12 @@ public abstract class AbstractSolver implements Solver {
 
         this.executeInternal(startPos);
 
+        if (this.polish && (false == this.solutions.isEmpty())) {
+            final byte[] polished = new SolutionPolisher(this.board, startPos).polish(this.solutions.get(0).getSteps());
+            if (polished.length < this.solutionSize) {
+                this.addSolution(polished);
+            }
+        }
         return this.solutionSize;
     }
 
@@ -27,7 +27,7 @@ import colorfill.model.ColorAreaSet;
  */
 public class ColorAreaGroup {
 
-    private final Board board;
+    private Board board;
     private final long[][] theArray;
     private final ColorAreaSet.Iterator iter;
     
@@ -46,6 +46,41 @@ public class ColorAreaGroup {
         this.colorsNotEmptyBits = 0;
     }
 
+    /**
+     * the copy constructor
+     */
+    public ColorAreaGroup(final ColorAreaGroup other) {
+        this.board = other.board;
+        this.theArray = new long[other.theArray.length][];
+        for (int color = 0;  color < this.theArray.length;  ++color) {
+            this.theArray[color] = ColorAreaSet.constructor(other.theArray[color]);
+        }
+        this.iter = new ColorAreaSet.Iterator();
+        this.colorsNotEmptyBits = other.colorsNotEmptyBits;
+    }
+
+    /**
+     * check if this color area group can be used for the other board:
+     * it must have the same number of colors and ColorAreaSets of the same size.
+     */
+    public boolean isCompatible(final Board board) {
+        return (this.theArray.length == board.getNumColors())
+                && (this.theArray[0].length == ColorAreaSet.arrayLength(board));
+    }
+
+    /**
+     * remove all color areas, and use this color area group for the other board.
+     * @param board must be compatible, see {@link #isCompatible(Board)}
+     */
+    public void reset(final Board board) {
+        assert this.isCompatible(board);
+        this.board = board;
+        for (final long[] caSet : this.theArray) {
+            ColorAreaSet.clear(caSet);
+        }
+        this.colorsNotEmptyBits = 0;
+    }
+
     /**
      * copy the contents of the other color area group into this one,
      * except for the specified color which will be empty.
@@ -77,6 +112,65 @@ public class ColorAreaGroup {
         }
     }
 
+    /**
+     * add all color areas that are not members of the "exclude" set and not members of this group yet,
+     * and append them to the array, so they can be removed again by {@link #removeAll(ColorArea[], int, int)}.
+     * @param addColorAreas the color areas to be added
+     * @param excludeColorAreas color areas that are also members of this set will not be added
+     * @param added the added color areas are stored here
+     * @param numAdded number of color areas already stored in added
+     * @return new number of color areas stored in added
+     */
+    public int addAllNew(final ColorArea[] addColorAreas, final long[] excludeColorAreas, final ColorArea[] added, int numAdded) {
+        for (final ColorArea ca : addColorAreas) {
+            final int caId = ca.getId();
+            final int color = ca.getColor();
+            final long[] caSet = this.theArray[color];
+            if ((false == ColorAreaSet.contains(excludeColorAreas, caId)) && (false == ColorAreaSet.contains(caSet, caId))) {
+                ColorAreaSet.add(caSet, caId);
+                this.colorsNotEmptyBits |= 1 << color;
+                added[numAdded++] = ca;
+            }
+        }
+        return numAdded;
+    }
+
+    /**
+     * remove the color areas that were added by {@link #addAllNew(ColorArea[], long[], ColorArea[], int)}.
+     * warning: does not update the colors that are not empty, see {@link #restoreColor(byte, long[], int)}.
+     * @param removeColorAreas the color areas to be removed
+     * @param from first index in removeColorAreas
+     * @param to last index in removeColorAreas (exclusive)
+     */
+    public void removeAll(final ColorArea[] removeColorAreas, final int from, final int to) {
+        for (int i = from;  i < to;  ++i) {
+            final ColorArea ca = removeColorAreas[i];
+            ColorAreaSet.remove(this.theArray[ca.getColor()], ca.getId());
+        }
+    }
+
+    /**
+     * move all color areas of the specified color into the other set, so this color will be empty.
+     * @param color the color
+     * @param casOther the color areas are copied to this set
+     */
+    public void moveColorTo(final byte color, final long[] casOther) {
+        ColorAreaSet.copyFrom(casOther, this.theArray[color]);
+        ColorAreaSet.clear(this.theArray[color]);
+        this.colorsNotEmptyBits &= ~(1 << color);
+    }
+
+    /**
+     * undo {@link #moveColorTo(byte, long[])}: copy the color areas back into the specified color.
+     * @param color the color
+     * @param casOther the color areas of this color
+     * @param colorsNotEmpty the colors that are not empty, as returned by {@link #getColorsNotEmpty()} before the move
+     */
+    public void restoreColor(final byte color, final long[] casOther, final int colorsNotEmpty) {
+        ColorAreaSet.copyFrom(this.theArray[color], casOther);
+        this.colorsNotEmptyBits = colorsNotEmpty;
+    }
+
     /**
      * add all color areas into the specified color.
      * warning: does not check or update the color areas for consistency.
@@ -131,17 +225,17 @@ public class ColorAreaGroup {
 
     /**
      * get the colors that are situated at the specified depth.
+     * @param depths depth of all color areas, indexed by ColorArea ID (see Board.getColorAreasDepth)
      * @return list of colors at depth, may be empty
      */
-    public int getColorsDepth(final int depth) {
+    public int getColorsDepth(final int depth, final int[] depths) {
         int result = 0;
         for (final long[] caSet : this.theArray) {
             this.iter.init(caSet);
             int nextId;
             while ((nextId = this.iter.nextOrNegative()) >= 0) {
-                final ColorArea ca = this.board.getColorArea4Id(nextId);
-                if (ca.getDepth() == depth) {
-                    result |= 1 << ca.getColor();
+                if (depths[nextId] == depth) {
+                    result |= 1 << this.board.getColorArea4Id(nextId).getColor();
                     break; // for (ca)
                 }
             }
@@ -152,9 +246,10 @@ public class ColorAreaGroup {
     /**
      * get the colors that are situated at the specified depth or lower,
      * but only the colors at the maximum depth level.
+     * @param depths depth of all color areas, indexed by ColorArea ID (see Board.getColorAreasDepth)
      * @return list of colors at depth or lower, not expected to be empty
      */
-    public int getColorsDepthOrLower(final int depth) {
+    public int getColorsDepthOrLower(final int depth, final int[] depths) {
         int result = 0;
         int depthMax = -1;
         for (final long[] caSet : this.theArray) {
@@ -163,14 +258,13 @@ public class ColorAreaGroup {
             this.iter.init(caSet);
             int nextId;
             while ((nextId = this.iter.nextOrNegative()) >= 0) {
-                final ColorArea ca = this.board.getColorArea4Id(nextId);
-                final int d = ca.getDepth();
+                final int d = depths[nextId];
                 if (d == depth) {
-                    color = ca.getColor();
+                    color = this.board.getColorArea4Id(nextId).getColor();
                     depthColor = d;
                     break; // for (ca)
                 } else if ((d > depthColor) && (d < depth)) {
-                    color = ca.getColor();
+                    color = this.board.getColorArea4Id(nextId).getColor();
                     depthColor = d;
                 }
             }
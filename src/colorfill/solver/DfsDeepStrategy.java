@@ -37,9 +37,11 @@ import colorfill.model.Board;
 public class DfsDeepStrategy implements DfsStrategy {
 
     private final int maxDepth;
+    private final int[] depths;
 
     public DfsDeepStrategy(final Board board, final int startPos) {
         this.maxDepth = board.getDepth(startPos);
+        this.depths = board.getColorAreasDepth(startPos);
     }
 
     @Override
@@ -60,7 +62,7 @@ public class DfsDeepStrategy implements DfsStrategy {
         int result = neighbors.getColorsCompleted(notFlooded);
         if (0 == result) {
             if (depth < this.maxDepth) {
-                result = neighbors.getColorsDepth(depth + 1);
+                result = neighbors.getColorsDepth(depth + 1, this.depths);
             } else  {
                 result = neighbors.getColorsNotEmpty();
             }
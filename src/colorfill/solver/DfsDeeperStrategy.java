@@ -32,9 +32,11 @@ import colorfill.model.Board;
 public class DfsDeeperStrategy implements DfsStrategy {
 
     private final int maxDepth;
+    private final int[] depths;
 
     public DfsDeeperStrategy(final Board board, final int startPos) {
         this.maxDepth = board.getDepth(startPos);
+        this.depths = board.getColorAreasDepth(startPos);
     }
 
     @Override
@@ -54,7 +56,7 @@ public class DfsDeeperStrategy implements DfsStrategy {
             final ColorAreaGroup neighbors) {
         int result = neighbors.getColorsCompleted(notFlooded);
         if (0 == result) {
-            result = neighbors.getColorsDepthOrLower(Math.min(depth + 1, this.maxDepth));
+            result = neighbors.getColorsDepthOrLower(Math.min(depth + 1, this.maxDepth), this.depths);
         }
         return result;
     }
@@ -17,9 +17,12 @@
 
 package colorfill.solver;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import colorfill.model.Board;
+import colorfill.model.ColorAreaSet;
 
 /**
  * this strategy results in a complete search.
@@ -31,7 +34,13 @@ import colorfill.model.Board;
  * 2) all colors that are possible in the next step.
  * (hence the name "exhaustive")
  * <p>
- * superseded by AStarPuchertStrategy, which runs faster and needs less memory
+ * superseded by AStarPuchertStrategy, which runs faster and needs less memory,
+ * but still useful as an independent check of its results.
+ * the parallel search of DfsSolver is supported: all its tasks share the map of known states,
+ * which is then split into stripes that are locked separately.
+ * <p>
+ * the known states and their hash table are stored off-heap, in direct ByteBuffers, so they are not limited by the
+ * size of the Java heap, but by -XX:MaxDirectMemorySize (which is the same as -Xmx by default).
  */
 
 public class DfsExhaustiveStrategy implements DfsStrategy {
@@ -56,29 +65,54 @@ public class DfsExhaustiveStrategy implements DfsStrategy {
         HASH_EXPECTED = HASH_EXPECTED_FAST;
     }
 
-    private int previousNumSteps = Integer.MAX_VALUE;
+    private static final int STRIPE_BITS = 6; // parallel search: the map is split into 2^STRIPE_BITS stripes, each with its own lock  CONFIGURE THIS
+
+    private volatile int previousNumSteps = Integer.MAX_VALUE; // parallel search: updated by all tasks
+    private final boolean parallel;
+    private final StateMap[] stripes;
+    private final int stripeMask;
 
     public DfsExhaustiveStrategy(final Board board) {
-        final int stateSizeBytes = board.getSizeColorAreas8();
-        this.stateSize = ((stateSizeBytes + 7) >> 3) << 1;
-        this.f = HASH_LOAD_FACTOR;
-        this.constructorInt2ByteOpenCustomHashMapPutIfLess(HASH_EXPECTED);
+        this(board, false);
+    }
+
+    /**
+     * constructor
+     * @param board
+     * @param parallel true if this strategy is used by all tasks of the parallel search (see DfsSolver);
+     *        then the map of known states is split into stripes, which are locked separately
+     */
+    public DfsExhaustiveStrategy(final Board board, final boolean parallel) {
+        final int stateSize = ColorAreaSet.arrayLength(board);
+        this.parallel = parallel;
+        this.stripes = new StateMap[parallel ? 1 << STRIPE_BITS : 1];
+        this.stripeMask = this.stripes.length - 1;
+        for (int i = 0;  i < this.stripes.length;  ++i) {
+            this.stripes[i] = new StateMap(stateSize, HASH_LOAD_FACTOR, HASH_EXPECTED / this.stripes.length);
+        }
     }
 
     @Override
     public String getInfo() {
-        final long mbHashK = (this.key.length >> 20) * 4;
-        final long mbHashV = this.value.length >> 20;
-        long bData = 0;
-        for (final int[] i : this.memoryBlocks) {
-            if (null != i) {
-                bData += i.length * 4;
+        long bHash = 0, bData = 0, size = 0;
+        for (final StateMap stripe : this.stripes) {
+            for (final ByteBuffer i : stripe.table) {
+                bHash += i.capacity();
+            }
+            for (final ByteBuffer i : stripe.memoryBlocks) {
+                if (null != i) {
+                    bData += i.capacity();
+                }
             }
+            size += stripe.size;
         }
+        final long mbHash = bHash >> 20;
         final long mbData = bData >> 20;
-        return (mbHashK + mbHashV + mbData) + " MB memory used (hashMap "
-                + (mbHashK + mbHashV) + " MB, data " + mbData + " MB, size " + this.size + ")"
-                + " stateSize=" + (this.stateSize*4) + " numStates=" + (bData / (this.stateSize*4));
+        final int stateBytes = this.stripes[0].stateBytes;
+        return (mbHash + mbData) + " MB memory used (hashMap "
+                + mbHash + " MB, data " + mbData + " MB, size " + size + ")"
+                + " stateSize=" + stateBytes + " numStates=" + (bData / stateBytes)
+                + (this.parallel ? " stripes=" + this.stripes.length : "");
                 //+ " less=" + this.numLess + " notLess=" + this.numNotLess;
     }
 
@@ -100,7 +134,8 @@ public class DfsExhaustiveStrategy implements DfsStrategy {
             result = neighbors.getColorsCompleted(notFlooded);
             // if no colors can be completed now
             // then we will need at least one step more than there are colors left
-            if ((0 == result) && (diffNumSteps < -1)) {
+            // (the depth is stored as a signed byte in the map, so deeper states are not filtered)
+            if ((0 == result) && (diffNumSteps < -1) && (depth < Byte.MAX_VALUE)) {
                 // filter the result:
                 // only include colors which do not result in already known states (at this or lower depth)
                 for (int color = 0, colorsBits = neighbors.getColorsNotEmpty();  0 != colorsBits;  color++, colorsBits >>= 1) {
@@ -113,84 +148,130 @@ public class DfsExhaustiveStrategy implements DfsStrategy {
         return result;
     }
 
+    /**
+     * add the state to the map, see {@link StateMap#put(long[], long[], long, int)}.
+     * the stripe of the map is selected by the upper bits of the hashcode,
+     * while the lower bits select the position in the hash table of the stripe.
+     */
+    private boolean put(final long[] set1, final long[] set2, final int depth) {
+        final long h64 = StateMap.hashCode(set1, set2);
+        final StateMap stripe = this.stripes[(int)(h64 >>> (Long.SIZE - STRIPE_BITS)) & this.stripeMask];
+        if (this.parallel) {
+            synchronized (stripe) {
+                return stripe.put(set1, set2, h64, depth);
+            }
+        } else {
+            return stripe.put(set1, set2, h64, depth);
+        }
+    }
+
 
     /** this class is a minimal HashMap implementation that is used here
-     * to store the known states and the depths they were found at */
-//    private static class StateMap {
+     * to store the known states and the depths they were found at.
+     * <p>
+     * everything is stored off-heap, in direct ByteBuffers:
+     * the states are stored in blocks of MEMORY_BLOCK_SIZE states each,
+     * and they are referenced by their numbers (starting at 1, because 0 is "empty").
+     * the hash table is stored in blocks of TABLE_BLOCK_SIZE slots each;
+     * a slot contains the state number (upper 56 bits) and the depth (lower 8 bits).
+     * all numbers and positions are "long", so a stripe can hold up to 2^56 - 1 states of any size. */
+    private static final class StateMap {
 
-        private final int stateSize;
+        private final int stateSize;  // number of "long" elements of each state
+        private final int stateBytes; // number of bytes of each state
 
-        private static final int MEMORY_BLOCK_SHIFT = 20; // 20 == 4 MiB
+        private static final int MEMORY_BLOCK_SHIFT = 16; // 1 << 16 == 64 Ki states in each block
         private static final int MEMORY_BLOCK_SIZE = 1 << MEMORY_BLOCK_SHIFT;
         private static final int MEMORY_BLOCK_MASK = MEMORY_BLOCK_SIZE - 1;
-        private int[][] memoryBlocks = new int[1][MEMORY_BLOCK_SIZE];
-        private int[] nextStateMemory = memoryBlocks[0];
-        private int numMemoryBlocks = 1, nextState = 1, nextStateOffset = 1, nextMemoryBlock = MEMORY_BLOCK_SIZE;
+        private ByteBuffer[] memoryBlocks = new ByteBuffer[1];
+        private ByteBuffer nextStateMemory;
+        private int numMemoryBlocks = 1, nextStateOffset;
+        private long nextState = 1;
+
+        private static final long MAX_STATE = (1L << (Long.SIZE - Byte.SIZE)) - 1;
+
+        private StateMap(final int stateSize, final float f, final int expected) {
+            this.stateSize = stateSize;
+            this.stateBytes = stateSize * Long.BYTES;
+            this.nextStateMemory = this.newMemoryBlock();
+            this.memoryBlocks[0] = this.nextStateMemory;
+            this.nextStateOffset = this.stateBytes; // state number 0 is not used
+            this.f = f;
+            this.constructorLong2ByteOpenCustomHashMapPutIfLess(expected);
+        }
+
+        private ByteBuffer newMemoryBlock() {
+            return ByteBuffer.allocateDirect(MEMORY_BLOCK_SIZE * this.stateBytes).order(ByteOrder.nativeOrder());
+        }
+
+        /** compute the hashcode of the "state", the same as hashStrategyHashCode() of the stored "state".
+         * @param set1 colors part 1, combined with set2 it is the "state"
+         * @param set2 colors part 2, combined with set1 it is the "state"
+         * @return hashcode
+         */
+        private static long hashCode(final long[] set1, final long[] set2) {
+            long h64 = SEED + PRIME5;
+            for (int i = 0, len = set1.length;  i < len;  ++i) {
+                h64 ^= Long.rotateLeft((set1[i] | set2[i]) * PRIME2, 31) * PRIME1;
+                h64 = Long.rotateLeft(h64, 27) * PRIME1 + PRIME4;
+            }
+            return hashFinal(h64);
+        }
 
         /** add "state" to this map, assign depth to it and return true
          *  if the "state" is not present yet
          *  or if it's present and had a larger depth assigned to it.
          * @param set1 colors part 1, combined with set2 it will be stored as "state"
          * @param set2 colors part 2, combined with set1 it will be stored as "state"
+         * @param h64 hashcode of "state", see {@link #hashCode(long[], long[])}
          * @param depth to be assigned (as value) to "state"
          * @return true if the state/depth pair was added.
          */
-        private boolean put(final long[] set1, final long[] set2, final int depth) {
+        private boolean put(final long[] set1, final long[] set2, final long h64, final int depth) {
             // copy state into memory at nextState
-            final long[] arr1 = set1;
-            final long[] arr2 = set2;
-            // performance: inline hashcode computation; copy&paste from hashStrategyHashCode()
-            int h32 = SEED + PRIME5;
-            for (int b = this.nextStateOffset, i = 0, len = arr1.length;  i < len;  ++i, ++b) {
-                final long klong = arr1[i] | arr2[i];
-                int k = (int)klong;
-                this.nextStateMemory[b] = k;
-                h32 += k * PRIME3;
-                h32 = Integer.rotateLeft(h32, 17) * PRIME4;
-                k = (int)(klong >>> 32);
-                this.nextStateMemory[++b] = k;
-                h32 += k * PRIME3;
-                h32 = Integer.rotateLeft(h32, 17) * PRIME4;
+            final ByteBuffer memory = this.nextStateMemory;
+            for (int b = this.nextStateOffset, i = 0, len = set1.length;  i < len;  ++i, b += Long.BYTES) {
+                memory.putLong(b, set1[i] | set2[i]);
             }
             // add to the map, increment nextState only if we want to accept the new state/depth pair
-            final int result = this.putIfLess(h32, (byte)depth);
+            final int result = this.putIfLess(h64, (byte)depth);
             if (result > 0) {
-                this.nextState += this.stateSize;
-                this.nextStateOffset += this.stateSize;
+                if (MAX_STATE == this.nextState) {
+                    throw new IllegalStateException("overflow! (more than " + MAX_STATE + " states stored)");
+                }
+                ++this.nextState;
+                this.nextStateOffset += this.stateBytes;
                 // ensure that nextState points to next available memory position
-                if (this.nextMemoryBlock - this.nextState < this.stateSize) { // this.nextState + this.stateSize > this.nextMemoryBlock
+                if (0 == (this.nextState & MEMORY_BLOCK_MASK)) {
                     if (this.memoryBlocks.length <= this.numMemoryBlocks) {
                         this.memoryBlocks = Arrays.copyOf(this.memoryBlocks, this.memoryBlocks.length << 1);
                     }
-                    this.nextStateMemory = new int[MEMORY_BLOCK_SIZE];
+                    this.nextStateMemory = this.newMemoryBlock();
                     this.memoryBlocks[this.numMemoryBlocks++] = this.nextStateMemory;
-                    this.nextState = this.nextMemoryBlock;
                     this.nextStateOffset = 0;
-                    this.nextMemoryBlock += MEMORY_BLOCK_SIZE;
-                    if (0 == this.nextMemoryBlock) { // works only because MEMORY_BLOCK_SIZE is a power of 2
-                        throw new IllegalStateException("Integer overflow! (16 GB data storage exceeded)");
-                    }
                 }
             }
             return result >= 0;
         }
 
-        /** this hash strategy accesses the data in the StateMap memory arrays */
+        /** this hash strategy accesses the data in the StateMap memory blocks */
 //        private class HashStrategy {
-            public boolean hashStrategyEquals(final int arg0, final int arg1) {
-                final int[] memory0 = this.memoryBlocks[arg0 >>> MEMORY_BLOCK_SHIFT];
-                int offset0 = arg0 & MEMORY_BLOCK_MASK;
-                final int[] memory1 = this.memoryBlocks[arg1 >>> MEMORY_BLOCK_SHIFT];
-                int offset1 = arg1 & MEMORY_BLOCK_MASK;
-                final int limit0 = offset0 + this.stateSize;
+            public boolean hashStrategyEquals(final long arg0, final long arg1) {
+                final ByteBuffer memory0 = this.memoryBlocks[(int)(arg0 >>> MEMORY_BLOCK_SHIFT)];
+                int offset0 = ((int)arg0 & MEMORY_BLOCK_MASK) * this.stateBytes;
+                final ByteBuffer memory1 = this.memoryBlocks[(int)(arg1 >>> MEMORY_BLOCK_SHIFT)];
+                int offset1 = ((int)arg1 & MEMORY_BLOCK_MASK) * this.stateBytes;
+                final int limit0 = offset0 + this.stateBytes;
                 do {
-                    if (memory0[offset0++] != memory1[offset1++]) { return false; } // not equal
+                    if (memory0.getLong(offset0) != memory1.getLong(offset1)) { return false; } // not equal
+                    offset0 += Long.BYTES;
+                    offset1 += Long.BYTES;
                 } while (offset0 < limit0);
                 return true; // equal
             }
 
             /*
-             * hashcode calculation based on xxhash32
+             * hashcode calculation based on xxhash64
              * <p>
              * Java implementation by Adrien Grand
              * https://github.com/jpountz/lz4-java
@@ -211,33 +292,37 @@ public class DfsExhaustiveStrategy implements DfsStrategy {
              * See the License for the specific language governing permissions and
              * limitations under the License.
              */
-            private static final int SEED = 0x9747b28c;
-//            private static final int PRIME1 = -1640531535;
-//            private static final int PRIME2 = -2048144777;
-            private static final int PRIME3 = -1028477379;
-            private static final int PRIME4 = 668265263;
-            private static final int PRIME5 = 374761393;
-
-            public int hashStrategyHashCode(final int arg0) {
-                final int[] memory = this.memoryBlocks[arg0 >>> MEMORY_BLOCK_SHIFT];
-                int offset = arg0 & MEMORY_BLOCK_MASK;
-                // calculation taken from xxhash32
-                final int len = this.stateSize;
-                int h32 = SEED + PRIME5;
+            private static final long SEED = 0x9747b28cL;
+            private static final long PRIME1 = -7046029288634856825L;
+            private static final long PRIME2 = -4417276706812531889L;
+            private static final long PRIME3 = 1609587929392839161L;
+            private static final long PRIME4 = -8796714831421723037L;
+            private static final long PRIME5 = 2870177450012600261L;
+
+            public long hashStrategyHashCode(final long arg0) {
+                final ByteBuffer memory = this.memoryBlocks[(int)(arg0 >>> MEMORY_BLOCK_SHIFT)];
+                int offset = ((int)arg0 & MEMORY_BLOCK_MASK) * this.stateBytes;
+                // calculation taken from xxhash64
+                long h64 = SEED + PRIME5;
                 // we don't need to mix in "len" because it's a constant value
-//                h32 += len << 2;
-                final int limit = offset + len;
+//                h64 += len;
+                final int limit = offset + this.stateBytes;
                 do {
-                    h32 += memory[offset++] * PRIME3;
-                    h32 = Integer.rotateLeft(h32, 17) * PRIME4;
+                    h64 ^= Long.rotateLeft(memory.getLong(offset) * PRIME2, 31) * PRIME1;
+                    h64 = Long.rotateLeft(h64, 27) * PRIME1 + PRIME4;
+                    offset += Long.BYTES;
                 } while (offset < limit);
-                // we omit the finalization step because we want faster computation; hash quality still seems to be good enough
-//                h32 ^= h32 >>> 15;
-//                h32 *= PRIME2;
-//                h32 ^= h32 >>> 13;
-//                h32 *= PRIME3;
-//                h32 ^= h32 >>> 16;
-                return h32;
+                return hashFinal(h64);
+            }
+
+            /** the finalization step of xxhash64; both ends of the hashcode are used, by the stripes and by the table positions */
+            private static long hashFinal(long h64) {
+                h64 ^= h64 >>> 33;
+                h64 *= PRIME2;
+                h64 ^= h64 >>> 29;
+                h64 *= PRIME3;
+                h64 ^= h64 >>> 32;
+                return h64;
             }
 //        } // private class HashStrategy
 
@@ -245,6 +330,9 @@ public class DfsExhaustiveStrategy implements DfsStrategy {
          * taken from the library "fastutil" <br>
          * http://fastutil.di.unimi.it/ <br>
          * https://github.com/vigna/fastutil
+         * <p>
+         * the keys and values are packed into one "long" slot, and the slots are stored
+         * in direct ByteBuffers, so the table can be larger than an array.
          */
         /*
          * Copyright (C) 2002-2014 Sebastiano Vigna
@@ -261,60 +349,74 @@ public class DfsExhaustiveStrategy implements DfsStrategy {
          * See the License for the specific language governing permissions and
          * limitations under the License.
          */
-//        private class Int2ByteOpenCustomHashMapPutIfLess {
-            /** The array of keys. */
-            private transient int[] key;
-            /** The array of values. */
-            private transient byte[] value;
+//        private class Long2ByteOpenCustomHashMapPutIfLess {
+            private static final int TABLE_BLOCK_SHIFT = 20; // 1 << 20 == 1 Mi slots (8 MiB) in each block
+            private static final int TABLE_BLOCK_SIZE = 1 << TABLE_BLOCK_SHIFT;
+            private static final int TABLE_BLOCK_MASK = TABLE_BLOCK_SIZE - 1;
+            /** The blocks of slots: key (state number) in the upper bits, value (depth) in the lower 8 bits; 0 is "empty". */
+            private transient ByteBuffer[] table;
             /** The mask for wrapping a position counter. */
-            private transient int mask;
+            private transient long mask;
             /** The current table size. */
-            private transient int n;
+            private transient long n;
             /** Threshold after which we rehash. It must be the table size times {@link #f}. */
-            private transient int maxFill;
-            /** Number of entries in the set (including the key zero, if present). */
-            private int size;
+            private transient long maxFill;
+            /** Number of entries in the set. */
+            private long size;
             /** The acceptable load factor. */
             private final float f;
             /** some counters, for info only */
             //private int numLess, numNotLess;
             /** constructor */
-            private void constructorInt2ByteOpenCustomHashMapPutIfLess(final int expected) {
+            private void constructorLong2ByteOpenCustomHashMapPutIfLess(final int expected) {
                 if ( expected < 0 ) throw new IllegalArgumentException( "The expected number of elements must be nonnegative" );
                 n = hashCommonArraySize( expected );
                 mask = n - 1;
                 maxFill = hashCommonMaxFill( n );
-                key = new int[ n + 1 ];
-                value = new byte[ n + 1 ];
+                table = newTable( n );
+            }
+            /** allocate the blocks of an empty table.
+             * @param n the table size, a power of two */
+            private static ByteBuffer[] newTable( final long n ) {
+                final ByteBuffer[] table = new ByteBuffer[ (int)( ( n + TABLE_BLOCK_MASK ) >>> TABLE_BLOCK_SHIFT ) ];
+                for ( int i = 0; i < table.length; ++i ) {
+                    table[ i ] = ByteBuffer.allocateDirect( (int)Math.min( n, TABLE_BLOCK_SIZE ) * Long.BYTES ).order( ByteOrder.nativeOrder() );
+                }
+                return table;
+            }
+            private static long getSlot( final ByteBuffer[] table, final long pos ) {
+                return table[ (int)( pos >>> TABLE_BLOCK_SHIFT ) ].getLong( ( (int)pos & TABLE_BLOCK_MASK ) * Long.BYTES );
+            }
+            private static void setSlot( final ByteBuffer[] table, final long pos, final long slot ) {
+                table[ (int)( pos >>> TABLE_BLOCK_SHIFT ) ].putLong( ( (int)pos & TABLE_BLOCK_MASK ) * Long.BYTES, slot );
             }
             /**
              * put the key / value pair into this map if the key is not already in the
              * map or if it already exists and the new value is less than the old value.
-             * @param h32 pre-computed hashcode of key
+             * @param h64 pre-computed hashcode of key
              * @param v value
              * @return 1 if a new entry was added,
              *  0 if an existing entry was updated (new value is less than old value),
              *  -1 if nothing was changed (new value is NOT less than old value)
              */
-            private int putIfLess(final int h32, final byte v) {
-                final int k = this.nextState;
-                int pos, curr;
+            private int putIfLess(final long h64, final byte v) {
+                final long k = this.nextState;
+                long pos, curr;
                 insert: {
-                    final int[] key = this.key;
-                    if ( !( ( curr = key[ pos = h32 & mask ] ) == ( 0 ) ) ) {
-                        if ( ( this.hashStrategyEquals( ( curr ), ( k ) ) ) ) break insert;
-                        while ( !( ( curr = key[ pos = ( pos + 1 ) & mask ] ) == ( 0 ) ) )
-                            if ( ( this.hashStrategyEquals( ( curr ), ( k ) ) ) ) break insert;
+                    final ByteBuffer[] table = this.table;
+                    if ( !( ( curr = getSlot( table, pos = h64 & mask ) ) == ( 0 ) ) ) {
+                        if ( ( this.hashStrategyEquals( ( curr >>> Byte.SIZE ), ( k ) ) ) ) break insert;
+                        while ( !( ( curr = getSlot( table, pos = ( pos + 1 ) & mask ) ) == ( 0 ) ) )
+                            if ( ( this.hashStrategyEquals( ( curr >>> Byte.SIZE ), ( k ) ) ) ) break insert;
                     }
-                    key[ pos ] = k;
-                    this.value[ pos ] = v;
+                    setSlot( table, pos, ( k << Byte.SIZE ) | ( v & 0xff ) );
                     if ( this.size++ >= this.maxFill ) { this.rehash( hashCommonArraySize( size + 1 ) ); }
                     return 1; // key/value pair is new; ADDED.
                 }
-                final byte oldValue = this.value[ pos ];
+                final byte oldValue = (byte)curr;
                 if (oldValue - v > 0) { // putIfLess
                     //++this.numLess;
-                    this.value[ pos ] = v;
+                    setSlot( this.table, pos, ( curr & ~0xffL ) | ( v & 0xff ) );
                     return 0; // key already exists, new value is less than old value; UPDATED.
                 } else {
                     //++this.numNotLess;
@@ -322,47 +424,48 @@ public class DfsExhaustiveStrategy implements DfsStrategy {
                 }
             }
             /** Rehashes the map.
+             * the blocks of the old table are released as soon as their entries have been moved,
+             * so that the direct memory can be reclaimed while the rehash is still running.
              * @param newN the new size */
-            private void rehash( final int newN ) {
-                final int key[] = this.key;
-                final byte value[] = this.value;
-                final int mask = newN - 1;
-                final int newKey[] = new int[ newN + 1 ];
-                final byte newValue[] = new byte[ newN + 1 ];
-                int i = n, pos;
-                for ( int j = size; j-- != 0; ) {
-                    while ( ( ( key[ --i ] ) == ( 0 ) ) );
-                    if ( !( ( newKey[ pos = ( this.hashStrategyHashCode( key[ i ] ) ) & mask ] ) == ( 0 ) ) ) while ( !( ( newKey[ pos = ( pos + 1 ) & mask ] ) == ( 0 ) ) );
-                    newKey[ pos ] = key[ i ];
-                    newValue[ pos ] = value[ i ];
+            private void rehash( final long newN ) {
+                final ByteBuffer[] table = this.table;
+                final long mask = newN - 1;
+                final ByteBuffer[] newTable = newTable( newN );
+                long pos, slot;
+                for ( int b = 0; b < table.length; ++b ) {
+                    final ByteBuffer block = table[ b ];
+                    for ( int i = 0, limit = block.capacity(); i < limit; i += Long.BYTES ) {
+                        if ( ( slot = block.getLong( i ) ) == ( 0 ) ) continue;
+                        if ( !( ( getSlot( newTable, pos = ( this.hashStrategyHashCode( slot >>> Byte.SIZE ) ) & mask ) ) == ( 0 ) ) ) while ( !( ( getSlot( newTable, pos = ( pos + 1 ) & mask ) ) == ( 0 ) ) );
+                        setSlot( newTable, pos, slot );
+                    }
+                    table[ b ] = null;
                 }
-                newValue[ newN ] = value[ n ];
                 n = newN;
                 this.mask = mask;
                 maxFill = hashCommonMaxFill( n );
-                this.key = newKey;
-                this.value = newValue;
+                this.table = newTable;
             }
-            /** Returns the maximum number of entries that can be filled before rehashing. 
+            /** Returns the maximum number of entries that can be filled before rehashing.
             * @param n the size of the backing array.
             * @param f the load factor.
-            * @return the maximum number of entries before rehashing. 
+            * @return the maximum number of entries before rehashing.
             */
-           private int hashCommonMaxFill(final int n) {
-               /* We must guarantee that there is always at least 
+           private long hashCommonMaxFill(final long n) {
+               /* We must guarantee that there is always at least
                 * one free entry (even with pathological load factors). */
-               return Math.min( (int)Math.ceil( n * this.f ), n - 1 );
+               return Math.min( (long)Math.ceil( n * (double)this.f ), n - 1 );
            }
-           /** Returns the least power of two smaller than or equal to 2<sup>30</sup> and larger than or equal to <code>Math.ceil( expected / f )</code>. 
+           /** Returns the least power of two smaller than or equal to 2<sup>62</sup> and larger than or equal to <code>Math.ceil( expected / f )</code>.
             * @param expected the expected number of elements in a hash table.
             * @param f the load factor.
             * @return the minimum possible size for a backing array.
-            * @throws IllegalArgumentException if the necessary size is larger than 2<sup>30</sup>.
+            * @throws IllegalArgumentException if the necessary size is larger than 2<sup>62</sup>.
             */
-           private int hashCommonArraySize(final int expected) {
-               final long s = Math.max( 2, hashCommonNextPowerOfTwo( (long)Math.ceil( expected / this.f ) ) );
-               if ( s > (1 << 30) ) throw new IllegalArgumentException( "Too large (" + expected + " expected elements with load factor " + this.f + ")" );
-               return (int)s;
+           private long hashCommonArraySize(final long expected) {
+               final double s = Math.ceil( expected / (double)this.f );
+               if ( s > (1L << 62) ) throw new IllegalArgumentException( "Too large (" + expected + " expected elements with load factor " + this.f + ")" );
+               return Math.max( 2, hashCommonNextPowerOfTwo( (long)s ) );
            }
            /** Return the least power of two greater than or equal to the specified value.
             * <p>Note that this function will return 1 when the argument is 0.
@@ -379,7 +482,7 @@ public class DfsExhaustiveStrategy implements DfsStrategy {
                x |= x >> 16;
                return ( x | x >> 32 ) + 1;
            }
-//        } // private class Int2ByteOpenCustomHashMapPutIfLess
-//    } // private static class StateMap
+//        } // private class Long2ByteOpenCustomHashMapPutIfLess
+    } // private static class StateMap
 
 }
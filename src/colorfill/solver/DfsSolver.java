@@ -17,33 +17,58 @@
 
 package colorfill.solver;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import colorfill.model.Board;
 import colorfill.model.ColorArea;
 import colorfill.model.ColorAreaSet;
 
 /**
- * a solver implementation that performs a depth-first search using recursion.
+ * a solver implementation that performs a depth-first search.
+ * <p>
+ * the search uses an explicit stack instead of recursion, so it can be paused and resumed, see {@link #resume()}.
+ * <p>
+ * optionally, the search runs in parallel, see {@link #setParallel(boolean)},
+ * and it skips the states that have been searched already, see {@link #setTranspositionTable(boolean)}.
  */
 public class DfsSolver extends AbstractSolver {
 
     private Class<? extends DfsStrategy> strategyClass = DfsGreedyStrategy.class; // default
     private DfsStrategy strategy;
+    private boolean parallel = false; // CONFIGURE THIS
+    private static final int PARALLEL_MAX_DEPTH = 4; // in parallel mode, the subtrees up to this depth are separate tasks  CONFIGURE THIS
+    private boolean useTranspositionTable = false; // CONFIGURE THIS
+    private static final int TRANSPOSITION_TABLE_BITS = 22; // 2^22 entries = 32 MiB  CONFIGURE THIS
+    private DfsTranspositionTable transpositionTable = null; // the table of the current search, or null
+    private long[] zobristKeys = null; // random numbers for Zobrist hashing, used by the transposition table
 
-    private byte[] solution;
-    private long[] allFlooded;
-    private ColorAreaGroup notFlooded;
-    private ColorAreaGroup[] neighbors;
-    private final ColorAreaSet.Iterator iter;
+    private final SolverContext context; // memory reused from the previous board, may be null
+    private DfsTask pausedSearch = null; // the sequential search that has been interrupted, see resume()
 
     /**
      * construct a new solver for this Board.
      * @param board the problem to be solved
      */
     public DfsSolver(final Board board) {
+        this(board, null);
+    }
+
+    /**
+     * construct a new solver for this Board.
+     * @param board the problem to be solved
+     * @param context memory reused from the previous board, or null
+     */
+    public DfsSolver(final Board board, final SolverContext context) {
         super(board);
-        this.iter = new ColorAreaSet.Iterator();
+        this.context = context;
     }
 
     /* (non-Javadoc)
@@ -59,6 +84,35 @@ public class DfsSolver extends AbstractSolver {
         this.strategyClass = strategyClass.asSubclass(DfsStrategy.class);
     }
 
+    /**
+     * select the parallel search.
+     * <p>
+     * the subtrees at the first levels of the search tree are searched by separate tasks
+     * in the common ForkJoinPool, so the search uses all processors.
+     * each task has its own copy of the search state, and all tasks share the size of the best
+     * solution found so far, so each of them can prune its subtree against the global best.
+     * the size of the solution is the same as in the sequential search, but if there are
+     * several solutions of that size then it's not determined which one is found first.
+     * (all tasks use the same strategy instance; DfsExhaustiveStrategy shares its map of known states)
+     * @param parallel true = parallel search, false = sequential search (default)
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * select the transposition table.
+     * <p>
+     * the strategies that don't do a complete search (like DfsDeepStrategy and DfsDeeperStrategy)
+     * reach many identical states through the same moves in different order, and search their
+     * subtrees again. with the transposition table, a state that has been searched already at the
+     * same depth is skipped. the table has a fixed size and it's lossy, see {@link DfsTranspositionTable}.
+     * @param useTranspositionTable true = use the transposition table, false = don't use it (default)
+     */
+    public void setTranspositionTable(final boolean useTranspositionTable) {
+        this.useTranspositionTable = useTranspositionTable;
+    }
+
     private DfsStrategy makeStrategy(final int startPos) {
         final DfsStrategy result;
         if (DfsGreedyStrategy.class.equals(this.strategyClass)) {
@@ -70,7 +124,7 @@ public class DfsSolver extends AbstractSolver {
         } else if (DfsDeeperStrategy.class.equals(this.strategyClass)) {
             result = new DfsDeeperStrategy(this.board, startPos);
         } else if (DfsExhaustiveStrategy.class.equals(this.strategyClass)) {
-            result = new DfsExhaustiveStrategy(this.board);
+            result = new DfsExhaustiveStrategy(this.board, this.parallel);
         } else {
             throw new IllegalArgumentException(
                     "unsupported strategy class " + this.strategyClass.getName());
@@ -91,7 +145,10 @@ public class DfsSolver extends AbstractSolver {
      */
     @Override
     public String getSolverInfo() {
-        final String info = this.strategy == null ? null : this.strategy.getInfo();
+        String info = this.strategy == null ? null : this.strategy.getInfo();
+        if (null != this.transpositionTable) {
+            info = ((null == info) || info.isEmpty() ? "" : info + " ") + this.transpositionTable.getInfo();
+        }
         if ((null == info) || info.isEmpty()) {
             return null;
         } else {
@@ -104,6 +161,7 @@ public class DfsSolver extends AbstractSolver {
      */
     @Override
     protected void executeInternal(final int startPos) throws InterruptedException {
+        this.pausedSearch = null;
         this.strategy = this.makeStrategy(startPos);
         if (null == this.strategy) {
             this.solutions.clear();
@@ -111,70 +169,331 @@ public class DfsSolver extends AbstractSolver {
         }
         this.strategy.setPreviousNumSteps(this.solutionSize);
 
+        if (this.useTranspositionTable) {
+            if (null == this.context) {
+                this.transpositionTable = new DfsTranspositionTable(TRANSPOSITION_TABLE_BITS);
+                this.zobristKeys = AStarSolver.HashMapLongArray2Byte.makeZobristKeys(this.board);
+            } else {
+                this.transpositionTable = this.context.getTranspositionTable(TRANSPOSITION_TABLE_BITS);
+                this.zobristKeys = this.context.getZobristKeys(this.board);
+            }
+        } else {
+            this.transpositionTable = null;
+        }
+
         final ColorArea startCa = this.board.getColorArea4Cell(startPos);
-        this.allFlooded = ColorAreaSet.constructor(this.board);
-        this.notFlooded = new ColorAreaGroup(this.board);
-        notFlooded.addAll(this.board.getColorAreas().toArray(new ColorArea[0]), this.allFlooded);
-        this.solution = new byte[MAX_SEARCH_DEPTH];
-        this.neighbors = new ColorAreaGroup[MAX_SEARCH_DEPTH];
-        for (int i = 0;  i < this.neighbors.length;  ++i) {
-            this.neighbors[i] = new ColorAreaGroup(this.board);
+        final long[] allFlooded = ColorAreaSet.constructor(this.board);
+        final ColorAreaGroup notFlooded = new ColorAreaGroup(this.board);
+        notFlooded.addAll(this.board.getColorAreas().toArray(new ColorArea[0]), allFlooded);
+        final byte[] solution = new byte[getMaxSearchDepth(this.board)];
+        final ColorAreaGroup neighbors = (null == this.context ? new ColorAreaGroup(this.board) : this.context.getColorAreaGroup(this.board));
+        neighbors.addAll(new ColorArea[]{startCa}, allFlooded);
+
+        if (this.parallel) {
+            this.executeParallel(new DfsTask(solution, allFlooded, notFlooded, neighbors, 0, startCa.getColor(),
+                    new AtomicInteger(this.solutionSize), new AtomicBoolean(false)));
+        } else {
+            this.executeSequential(new DfsTask(solution, allFlooded, notFlooded, neighbors, 0, startCa.getColor(), null, null));
         }
-        this.neighbors[0].addAll(new ColorArea[]{startCa}, this.allFlooded);
+    }
+
+    /**
+     * continue the search that has been paused.
+     * <p>
+     * the sequential search is paused when the thread is interrupted: execute() throws
+     * InterruptedException, but the state of the search is kept, and this method continues
+     * the search exactly where it stopped. (the SolverContext of this solver must not be used
+     * by another solver in the meantime)
+     * @return number of steps in the solution
+     * @throws InterruptedException if the search is paused again
+     * @throws IllegalStateException if there is no paused search
+     */
+    public int resume() throws InterruptedException {
+        if (null == this.pausedSearch) {
+            throw new IllegalStateException("there is no paused search");
+        }
+        final DfsTask search = this.pausedSearch;
+        this.pausedSearch = null;
+        this.executeSequential(search);
+        return this.solutionSize;
+    }
+
+    /**
+     * check if there is a paused search, see {@link #resume()}.
+     * @return true if the search can be resumed
+     */
+    public boolean isPaused() {
+        return null != this.pausedSearch;
+    }
 
-        this.doRecursion(0, startCa.getColor());
+    /**
+     * run the sequential search, and keep its state if it's interrupted.
+     * @param search
+     * @throws InterruptedException
+     */
+    private void executeSequential(final DfsTask search) throws InterruptedException {
+        try {
+            search.search();
+        } catch (InterruptedException e) {
+            this.pausedSearch = search;
+            throw e;
+        }
     }
 
     /**
-     * the recursion used in this depth-first search.
-     * @param depth
-     * @param thisColor
+     * run the parallel search, and wait until it's finished.
+     * @param rootTask
      * @throws InterruptedException
      */
-    private void doRecursion(final int depth,
-            final byte thisColor
-            ) throws InterruptedException {
-        final ColorAreaGroup theseNeighbors = this.neighbors[depth];
-        final long[] thisFlooded = theseNeighbors.getColor(thisColor);
-        int colorsNotFlooded = this.notFlooded.countColorsNotEmpty();
-        if (ColorAreaSet.size(thisFlooded) == ColorAreaSet.size(this.notFlooded.getColor(thisColor))) {
-            --colorsNotFlooded;
-        }
-
-        // finished the search?
-        if (0 == colorsNotFlooded) {
-            this.solution[depth] = thisColor;
-            // skip element 0 because it's not a step but just the initial color at startPos
-            this.addSolution(Arrays.copyOfRange(this.solution, 1, depth + 1));
+    private void executeParallel(final DfsTask rootTask) throws InterruptedException {
+        // (ForkJoinTask.get() would run some of the tasks in this thread, and then it can't be interrupted)
+        final CompletableFuture<Void> future = CompletableFuture.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                rootTask.invoke();
+            }
+        }, ForkJoinPool.commonPool());
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            rootTask.cancelled.set(true); // stop all tasks
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error)e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * add the solution, and update the size of the best solution.
+     * (in parallel mode, this is called by all tasks)
+     */
+    private void addSolution(final byte[] solution, final AtomicInteger sharedSolutionSize) {
+        if (null == sharedSolutionSize) {
+            this.addSolution(solution);
             this.strategy.setPreviousNumSteps(this.solutionSize);
+        } else {
+            synchronized (this) {
+                this.addSolution(solution);
+                this.strategy.setPreviousNumSteps(this.solutionSize);
+                sharedSolutionSize.set(this.solutionSize);
+            }
+        }
+    }
 
-        // do next step
-        } else if (this.solutionSize > depth + colorsNotFlooded) { // TODO use ">=" instead of ">" to find all shortest solutions; slower!
 
-            if (Thread.interrupted()) { throw new InterruptedException(); }
+    /**
+     * the state of the depth-first search, and the search loop.
+     * <p>
+     * the search is iterative, it uses an explicit stack instead of recursion.
+     * there is only one ColorAreaGroup of neighbors, which is changed when a level of the stack is entered,
+     * and each level stores the changes (the deltas) so they can be undone when the level is left:
+     * the color areas that are flooded (removed from the neighbors) and the new neighbors that are added.
+     * <p>
+     * in the sequential search, one instance of this class does the whole search.
+     * in the parallel search, each subtree up to PARALLEL_MAX_DEPTH is searched by a separate task,
+     * which has its own copy of the state.
+     */
+    private final class DfsTask extends RecursiveAction {
+        private static final long serialVersionUID = 6305981725410392874L;
+
+        private final byte[] solution;
+        private final long[] allFlooded;
+        private final ColorAreaGroup notFlooded;
+        private final ColorAreaGroup neighbors; // the neighbors at the top level of the stack
+        private final ColorAreaSet.Iterator iter;
+        private final int startDepth;
+        private final byte startColor;
+        private final AtomicInteger sharedSolutionSize; // parallel search: size of the best solution; null otherwise
+        private final AtomicBoolean cancelled; // parallel search: stop all tasks; null otherwise
 
+        // the stack, indexed by depth; created when the search starts
+        private int[] stackNextColors;     // the colors that are still to be searched at the next depth
+        private int[] stackColorsNotEmpty; // delta: the colors of the neighbors that were not empty
+        private int[] stackAddedStart;     // delta: the first index in added of the neighbors that were added
+        private long[][] stackFlooded;     // delta: the color areas that were flooded (and removed from the neighbors)
+        private ColorArea[] added;         // delta: the neighbors that were added, at all depths
+        private long[] stackHash;          // delta: the hash value of the flooded color areas (transposition table only)
+        private int numAdded;
+        private long hash = 0;             // Zobrist hash value of allFlooded (transposition table only)
+        private int depth;                 // top of the stack
+        private boolean started = false;
+
+        private DfsTask(final byte[] solution, final long[] allFlooded, final ColorAreaGroup notFlooded, final ColorAreaGroup neighbors,
+                final int startDepth, final byte startColor, final AtomicInteger sharedSolutionSize, final AtomicBoolean cancelled) {
+            this.solution = solution;
+            this.allFlooded = allFlooded;
+            this.notFlooded = notFlooded;
+            this.neighbors = neighbors;
+            this.iter = new ColorAreaSet.Iterator();
+            this.startDepth = startDepth;
+            this.startColor = startColor;
+            this.sharedSolutionSize = sharedSolutionSize;
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * create a task for this subtree, with a copy of the current state.
+         */
+        private DfsTask newTask(final int depth, final byte color) {
+            final DfsTask task = new DfsTask(this.solution.clone(), this.allFlooded.clone(), new ColorAreaGroup(this.notFlooded), new ColorAreaGroup(this.neighbors),
+                    depth, color, this.sharedSolutionSize, this.cancelled);
+            task.hash = this.hash;
+            return task;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                this.search();
+            } catch (InterruptedException e) {
+                // the search has been cancelled, see executeParallel()
+            }
+        }
+
+        /**
+         * the loop of this depth-first search.
+         * it can be interrupted and called again, then it continues where it stopped.
+         * @throws InterruptedException
+         */
+        private void search() throws InterruptedException {
+            if (false == this.started) {
+                if (null == this.stackNextColors) {
+                    final int length = this.solution.length;
+                    this.stackNextColors = new int[length];
+                    this.stackColorsNotEmpty = new int[length];
+                    this.stackAddedStart = new int[length];
+                    this.stackFlooded = new long[length][]; // on very large boards, the deeper levels are created when they are used
+                    this.stackHash = new long[length];
+                    this.added = new ColorArea[DfsSolver.this.board.getColorAreasArray().length];
+                }
+                final boolean isEntered = this.enter(this.startDepth, this.startColor);
+                this.depth = (isEntered ? this.startDepth : this.startDepth - 1);
+                this.started = true;
+            }
+            final boolean isParallel = (null != this.sharedSolutionSize);
+            while (this.depth >= this.startDepth) {
+                final int depth = this.depth;
+                int nextColors = this.stackNextColors[depth];
+                if (0 == nextColors) {
+                    this.leave(depth);
+                    this.depth = depth - 1;
+                } else if (isParallel && (depth < PARALLEL_MAX_DEPTH)) {
+                    // parallel search: each subtree is a separate task
+                    final List<DfsTask> tasks = new ArrayList<DfsTask>();
+                    while (0 != nextColors) {
+                        final int l1b = nextColors & -nextColors; // Integer.lowestOneBit()
+                        nextColors ^= l1b; // clear lowest one bit
+                        tasks.add(this.newTask(depth + 1, (byte)Integer.numberOfTrailingZeros(l1b)));
+                    }
+                    this.stackNextColors[depth] = 0;
+                    invokeAll(tasks);
+                } else {
+                    final int l1b = nextColors & -nextColors; // Integer.lowestOneBit()
+                    final int clz = Integer.numberOfLeadingZeros(l1b); // hopefully an intrinsic function using instruction BSR / LZCNT / CLZ
+                    final boolean isEntered = this.enter(depth + 1, (byte)(31 - clz));
+                    this.stackNextColors[depth] = nextColors ^ l1b; // clear lowest one bit
+                    if (isEntered) {
+                        this.depth = depth + 1;
+                    }
+                }
+            }
+        }
+
+        /**
+         * do the step with this color, and if the search goes on
+         * then push the new level onto the stack.
+         * (the state is not changed if this is interrupted)
+         * @param depth
+         * @param thisColor
+         * @return true if the level has been pushed onto the stack
+         * @throws InterruptedException
+         */
+        private boolean enter(final int depth, final byte thisColor) throws InterruptedException {
+            final long[] thisFlooded = this.neighbors.getColor(thisColor);
+            int colorsNotFlooded = this.notFlooded.countColorsNotEmpty();
+            if (ColorAreaSet.size(thisFlooded) == ColorAreaSet.size(this.notFlooded.getColor(thisColor))) {
+                --colorsNotFlooded;
+            }
+            final int solutionSize = (null == this.sharedSolutionSize ? DfsSolver.this.solutionSize : this.sharedSolutionSize.get());
+
+            // finished the search?
+            if (0 == colorsNotFlooded) {
+                this.solution[depth] = thisColor;
+                // skip element 0 because it's not a step but just the initial color at startPos
+                DfsSolver.this.addSolution(Arrays.copyOfRange(this.solution, 1, depth + 1), this.sharedSolutionSize);
+
+            // do next step
+            } else if (solutionSize > depth + colorsNotFlooded) { // TODO use ">=" instead of ">" to find all shortest solutions; slower!
+
+                if (null == this.cancelled ? Thread.interrupted() : this.cancelled.get()) { throw new InterruptedException(); }
+
+                final DfsTranspositionTable transpositionTable = DfsSolver.this.transpositionTable;
+                if (null != transpositionTable) {
+                    long nextHash = this.hash;
+                    this.iter.init(thisFlooded);
+                    int nextId;
+                    while ((nextId = this.iter.nextOrNegative()) >= 0) {
+                        nextHash ^= DfsSolver.this.zobristKeys[nextId];
+                    }
+                    if (transpositionTable.findOrAdd(nextHash, depth)) {
+                        return false; // this state has been searched already
+                    }
+                    this.stackHash[depth] = this.hash;
+                    this.hash = nextHash;
+                }
+                this.push(depth, thisColor);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * push the new level onto the stack: flood this color, add the new neighbors,
+         * and let the strategy select the colors of the next step.
+         * @param depth
+         * @param thisColor
+         */
+        private void push(final int depth, final byte thisColor) {
             this.solution[depth] = thisColor;
-            this.notFlooded.removeAllColor(thisFlooded, thisColor);
-            ColorAreaSet.addAll(this.allFlooded, thisFlooded);
-            final ColorAreaGroup nextNeighbors = this.neighbors[depth + 1];
-            nextNeighbors.copyFrom(theseNeighbors, thisColor);
+            if (null == this.stackFlooded[depth]) {
+                this.stackFlooded[depth] = ColorAreaSet.constructor(DfsSolver.this.board);
+            }
+            final long[] flooded = this.stackFlooded[depth];
+            this.stackColorsNotEmpty[depth] = this.neighbors.getColorsNotEmpty();
+            this.neighbors.moveColorTo(thisColor, flooded);
+            this.notFlooded.removeAllColor(flooded, thisColor);
+            ColorAreaSet.addAll(this.allFlooded, flooded);
             // add new neighbors
-            this.iter.init(thisFlooded);
+            this.stackAddedStart[depth] = this.numAdded;
+            this.iter.init(flooded);
             int nextId;
             while ((nextId = this.iter.nextOrNegative()) >= 0) {
-                nextNeighbors.addAll(this.board.getColorArea4Id(nextId).getNeighborsArray(), this.allFlooded);
+                this.numAdded = this.neighbors.addAllNew(DfsSolver.this.board.getColorArea4Id(nextId).getNeighborsArray(),
+                        this.allFlooded, this.added, this.numAdded);
             }
             // pick the "best" neighbor colors to go on
-            int nextColors = this.strategy.selectColors(depth, this.allFlooded, this.notFlooded, nextNeighbors);
-            // go to next recursion level
-            while (0 != nextColors) {
-                final int l1b = nextColors & -nextColors; // Integer.lowestOneBit()
-                final int clz = Integer.numberOfLeadingZeros(l1b); // hopefully an intrinsic function using instruction BSR / LZCNT / CLZ
-                nextColors ^= l1b; // clear lowest one bit
-                doRecursion(depth + 1, (byte)(31 - clz));
-            }
-            ColorAreaSet.removeAll(this.allFlooded, thisFlooded); // restore for backtracking
-            this.notFlooded.addAllColor(thisFlooded, thisColor); // restore for backtracking
+            this.stackNextColors[depth] = DfsSolver.this.strategy.selectColors(depth, this.allFlooded, this.notFlooded, this.neighbors);
+        }
+
+        /**
+         * pop the level from the stack: undo the changes of the state.
+         * @param depth
+         */
+        private void leave(final int depth) {
+            final byte thisColor = this.solution[depth];
+            final long[] flooded = this.stackFlooded[depth];
+            final int addedStart = this.stackAddedStart[depth];
+            this.neighbors.removeAll(this.added, addedStart, this.numAdded);
+            this.numAdded = addedStart;
+            this.hash = this.stackHash[depth];
+            this.neighbors.restoreColor(thisColor, flooded, this.stackColorsNotEmpty[depth]);
+            ColorAreaSet.removeAll(this.allFlooded, flooded);
+            this.notFlooded.addAllColor(flooded, thisColor);
         }
     }
 }
@@ -0,0 +1,124 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+/**
+ * a bounded, lossy transposition table for the depth-first search of DfsSolver.
+ * <p>
+ * it contains the states that have been searched already, identified by the 64-bit Zobrist hash value
+ * of the flooded color areas, together with the depth. when a state is reached again at the same depth,
+ * through the same moves in a different order, then the strategy selects the same moves in its subtree,
+ * which has been searched already with the same or a larger size of the best solution, so it's skipped.
+ * <p>
+ * the table has a fixed size, it's split into buckets of 4 entries. when a bucket is full, an entry is
+ * replaced using the "clock" algorithm (second chance): each entry has a reference bit, which is set
+ * when the entry is found again, and the clock hand clears the bits until it finds an entry without it.
+ * the table is not actually cleared for the next search, a different random salt is mixed into the
+ * hash values instead, so the old entries are never found again and they are simply replaced.
+ * <p>
+ * only the hash value is stored, so with a very small probability two different states are mistaken
+ * for each other. then a subtree is skipped that should have been searched, and the search may miss a
+ * shorter solution, but it never finds an invalid solution. in the parallel search, all tasks share
+ * the table without locking, and a lost update has the same effect.
+ */
+final class DfsTranspositionTable {
+
+    private static final int BUCKET_SIZE = 4; // number of entries in each bucket, must be a power of two
+    private static final long REFERENCED = 1L; // the reference bit of the clock algorithm
+    private static final long EMPTY = 0L;
+    private static final long DEPTH_MULTIPLIER = 0x9e3779b97f4a7c15L; // 2^64 / golden ratio, mixes the depth into the hash value
+    private static final long SALT_MULTIPLIER = 0xbf58476d1ce4e5b9L; // from SplitMix64, mixes the number of the search into the hash value
+
+    private final long[] table;
+    private final int bucketMask;
+    private int hand = 0; // the clock hand, shared by all buckets
+    private long salt = 0; // changed by clear()
+    private int numClears = 0;
+    private long numHits = 0, numReplaced = 0; // for info only
+
+    /**
+     * constructor
+     * @param bits the table has 2^bits entries, 8 bytes each
+     */
+    DfsTranspositionTable(final int bits) {
+        this.table = new long[1 << bits];
+        this.bucketMask = (this.table.length - 1) & ~(BUCKET_SIZE - 1);
+    }
+
+    /**
+     * get the number of entries.
+     * @return
+     */
+    int size() {
+        return this.table.length;
+    }
+
+    /**
+     * remove all entries. (they are not found anymore, but they are still there, see the class description)
+     */
+    void clear() {
+        this.salt = Long.rotateLeft(++this.numClears * SALT_MULTIPLIER, 31) * DEPTH_MULTIPLIER;
+        this.numHits = 0;
+        this.numReplaced = 0;
+    }
+
+    /**
+     * check if the state has been searched already at this depth, and if not then add it.
+     * @param hash Zobrist hash value of the flooded color areas
+     * @param depth
+     * @return true if the state has been found, false if it has been added
+     */
+    boolean findOrAdd(final long hash, final int depth) {
+        long key = (hash ^ (depth * DEPTH_MULTIPLIER) ^ this.salt) & ~REFERENCED;
+        if (EMPTY == key) {
+            key = REFERENCED << 1;
+        }
+        final long[] table = this.table;
+        final int bucket = (int)(key >>> 32) & this.bucketMask; // the lower bits of the key are used by the reference bit
+        for (int i = bucket, end = bucket + BUCKET_SIZE;  i < end;  ++i) {
+            final long entry = table[i];
+            if ((entry & ~REFERENCED) == key) {
+                table[i] = key | REFERENCED;
+                ++this.numHits;
+                return true;
+            } else if (EMPTY == entry) { // entries are never removed, so the rest of the bucket is empty
+                table[i] = key;
+                return false;
+            }
+        }
+        // the bucket is full: move the clock hand to the first entry that is not referenced, and replace it
+        int hand = this.hand;
+        int i;
+        while (0 != (table[i = bucket + (hand++ & (BUCKET_SIZE - 1))] & REFERENCED)) {
+            table[i] &= ~REFERENCED; // second chance
+        }
+        table[i] = key;
+        this.hand = hand;
+        ++this.numReplaced;
+        return false;
+    }
+
+    /**
+     * get some info, like the number of states that have been found.
+     * (approximate numbers in the parallel search)
+     * @return
+     */
+    String getInfo() {
+        return "transpositionTable size=" + this.table.length + " hits=" + this.numHits + " replaced=" + this.numReplaced;
+    }
+}
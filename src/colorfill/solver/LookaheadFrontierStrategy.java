@@ -0,0 +1,54 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import colorfill.model.Board;
+
+/**
+ * a specific strategy for the lookahead solver.
+ * <p>
+ * the value of a state is the number of flooded cells, and if that's the same
+ * then the number of cells in the neighbor color areas (the size of the frontier).
+ */
+public class LookaheadFrontierStrategy implements LookaheadStrategy {
+
+    private final int[] idsMemberSize;
+
+    public LookaheadFrontierStrategy(final Board board) {
+        this.idsMemberSize = board.getMemberSize4IdArray();
+    }
+
+    @Override
+    public long evaluate(final long[] flooded, final int floodedCells, final long[] neighbors) {
+        int neighborCells = 0;
+        for (int i = 0;  i < neighbors.length;  ++i) {
+            long buf = neighbors[i];
+            while (0 != buf) {
+                final long l1b = buf & -buf;  // Long.lowestOneBit(buf)
+                neighborCells += this.idsMemberSize[(i << 6) + Long.numberOfTrailingZeros(l1b)];
+                buf ^= l1b;
+            }
+        }
+        return ((long)floodedCells << 32) + neighborCells;
+    }
+
+    @Override
+    public String getInfo() {
+        return null; // no info available
+    }
+}
@@ -0,0 +1,445 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import colorfill.model.Board;
+import colorfill.model.ColorArea;
+import colorfill.model.ColorAreaSet;
+
+/**
+ * a solver implementation that plays one move after the other (rolling horizon),
+ * so it's fast enough for very large boards and for real-time play.
+ * <p>
+ * before each move, it searches all sequences of moves up to a small depth (the lookahead),
+ * evaluates the states at the horizon using the strategy, and then plays the first move of the best sequence.
+ * the search is iterative deepening with a time budget for each move, see {@link #setMoveTimeBudget(int)}:
+ * depth 1 is always searched, and the deeper searches are done until the budget is used up.
+ * the states of the search tree are kept, so the subtree of the move that is played is reused for the next move.
+ * <p>
+ * a color that can be completely flooded in the next move is played without a search.
+ * optionally, the subtrees of the moves at the root are searched in parallel, see {@link #setParallel(boolean)}.
+ */
+public class LookaheadSolver extends AbstractSolver {
+
+    private static final long FINISHED = Long.MAX_VALUE; // value of a finished state, minus the number of moves to get there
+    private static final long TIMEOUT = Long.MIN_VALUE; // the search has been aborted
+
+    private Class<? extends LookaheadStrategy> strategyClass = LookaheadFrontierStrategy.class; // default
+    private LookaheadStrategy strategy;
+    private int maxDepth = 4; // the maximum lookahead  CONFIGURE THIS
+    private long moveTimeBudget = 5L * 1000000L; // nanoseconds for each move  CONFIGURE THIS
+    private boolean parallel = false; // CONFIGURE THIS
+
+    private long[][] casByColor; // the color areas of each color, indexed by color
+    private long[][] idsNeighborColorAreaSets;
+    private int[] idsMemberSize;
+    private int numSearches, sumDepth; // for info only
+
+    /**
+     * construct a new solver for this Board.
+     * @param board the problem to be solved
+     */
+    public LookaheadSolver(final Board board) {
+        super(board);
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.Solver#setStrategy(java.lang.Class)
+     */
+    @Override
+    public void setStrategy(final Class<? extends Strategy> strategyClass) {
+        if (false == LookaheadStrategy.class.isAssignableFrom(strategyClass)) {
+            throw new IllegalArgumentException(
+                    "unsupported strategy class " + strategyClass.getName()
+                    + "! " + this.getClass().getSimpleName() + " supports " + LookaheadStrategy.class.getSimpleName() + " only.");
+        }
+        this.strategyClass = strategyClass.asSubclass(LookaheadStrategy.class);
+    }
+
+    /**
+     * set the maximum lookahead, that is the number of moves that are searched before each move.
+     * @param maxDepth at least 1 (default 4)
+     */
+    public void setMaxDepth(final int maxDepth) {
+        this.maxDepth = Math.max(1, maxDepth);
+    }
+
+    /**
+     * set the time budget for each move.
+     * the search at depth 1 is always completed, so with a budget of zero this is a greedy solver.
+     * @param millis milliseconds (default 5)
+     */
+    public void setMoveTimeBudget(final int millis) {
+        this.moveTimeBudget = Math.max(0, millis) * 1000000L;
+    }
+
+    /**
+     * select the parallel search.
+     * <p>
+     * the subtrees of the moves at the root are searched by separate tasks in the common ForkJoinPool.
+     * the result is the same as in the sequential search, if the time budget is not used up.
+     * @param parallel true = parallel search, false = sequential search (default)
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.Solver#getSolverName()
+     */
+    @Override
+    public String getSolverName() {
+        return this.strategyClass.getSimpleName();
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.Solver#getSolverInfo()
+     */
+    @Override
+    public String getSolverInfo() {
+        final String info = this.strategy == null ? null : this.strategy.getInfo();
+        return this.getSolverName() + " searches=" + this.numSearches
+                + " averageDepth=" + (0 == this.numSearches ? 0 : (float)this.sumDepth / this.numSearches)
+                + ((null == info) || info.isEmpty() ? "" : " " + info);
+    }
+
+    private LookaheadStrategy makeStrategy() {
+        try {
+            return this.strategyClass.getConstructor(Board.class).newInstance(this.board);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new IllegalArgumentException(
+                    "unsupported strategy class " + this.strategyClass.getName(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(
+                    "unsupported strategy class " + this.strategyClass.getName(), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.AbstractSolver#executeInternal(int)
+     */
+    @Override
+    protected void executeInternal(final int startPos) throws InterruptedException {
+        this.strategy = this.makeStrategy();
+        this.casByColor = new long[this.board.getNumColors()][];
+        for (int color = 0;  color < this.casByColor.length;  ++color) {
+            this.casByColor[color] = this.board.getCasByColorBitsArray()[1 << color];
+        }
+        this.idsNeighborColorAreaSets = this.board.getNeighborColorAreaSet4IdArray();
+        this.idsMemberSize = this.board.getMemberSize4IdArray();
+        this.numSearches = 0;
+        this.sumDepth = 0;
+
+        final ColorArea startCa = this.board.getColorArea4Cell(startPos);
+        final long[] flooded = ColorAreaSet.constructor(this.board);
+        ColorAreaSet.add(flooded, startCa);
+        Node root = new Node(flooded, ColorAreaSet.constructor(this.idsNeighborColorAreaSets[startCa.getId()]), startCa.getMemberSize());
+
+        final Workspace work = new Workspace(flooded.length);
+        final byte[] solution = new byte[getMaxSearchDepth(this.board)];
+        int numMoves = 0;
+        while (false == ColorAreaSet.isEmpty(root.neighbors)) {
+            if (Thread.interrupted()) { throw new InterruptedException(); }
+            this.expand(root, work);
+            int color = this.getColorCompleted(root);
+            if (color < 0) {
+                color = this.search(root);
+            }
+            solution[numMoves++] = (byte)color;
+            root = root.children[color]; // the rest of the tree is dropped
+        }
+        this.addSolution(Arrays.copyOf(solution, numMoves));
+    }
+
+    /**
+     * find a color that can be completely flooded in the next move.
+     * @param node
+     * @return the color, or -1 if there is none
+     */
+    private int getColorCompleted(final Node node) {
+        for (int color = 0;  color < this.casByColor.length;  ++color) {
+            if (null != node.children[color]) {
+                final long[] casColor = this.casByColor[color];
+                boolean completed = true;
+                for (int i = 0;  completed && (i < casColor.length);  ++i) {
+                    completed = (0 == (casColor[i] & ~node.flooded[i] & ~node.neighbors[i]));
+                }
+                if (completed) {
+                    return color;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * run the iterative deepening search from this node.
+     * @param root must be expanded
+     * @return the color of the best move
+     * @throws InterruptedException
+     */
+    private int search(final Node root) throws InterruptedException {
+        final long deadline = System.nanoTime() + this.moveTimeBudget;
+        int bestColor = -1;
+        int depth;
+        for (depth = 1;  depth <= this.maxDepth;  ++depth) {
+            final long[] values = (this.parallel && (depth > 1) ? this.searchParallel(root, depth, deadline) : this.searchSequential(root, depth, deadline));
+            if (null == values) {
+                break; // time budget used up, use the result of the previous depth
+            }
+            long bestValue = TIMEOUT;
+            for (int color = 0;  color < values.length;  ++color) {
+                if ((null != root.children[color]) && (bestValue < values[color])) {
+                    bestValue = values[color];
+                    bestColor = color;
+                }
+            }
+            if (isFinished(bestValue)) {
+                ++depth;
+                break; // a shortest finishing sequence has been found, it can't get better
+            }
+        }
+        ++this.numSearches;
+        this.sumDepth += depth - 1;
+        return bestColor;
+    }
+
+    /**
+     * search the subtrees of all moves at the root.
+     * @return the values of the moves, indexed by color; or null if the search has been aborted
+     */
+    private long[] searchSequential(final Node root, final int depth, final long deadline) {
+        final Workspace work = new Workspace(root.flooded.length);
+        final long[] values = new long[root.children.length];
+        for (int color = 0;  color < values.length;  ++color) {
+            final Node child = root.children[color];
+            if (null != child) {
+                values[color] = this.evaluate(child, depth - 1, (1 == depth ? Long.MAX_VALUE : deadline), work);
+                if (TIMEOUT == values[color]) {
+                    return null;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * search the subtrees of all moves at the root, each one by a separate task.
+     * @return the values of the moves, indexed by color; or null if the search has been aborted
+     * @throws InterruptedException
+     */
+    private long[] searchParallel(final Node root, final int depth, final long deadline) throws InterruptedException {
+        final RootTask[] tasks = new RootTask[root.children.length];
+        for (int color = 0;  color < tasks.length;  ++color) {
+            final Node child = root.children[color];
+            if (null != child) {
+                tasks[color] = new RootTask(child, depth - 1, deadline);
+                ForkJoinPool.commonPool().execute(tasks[color]);
+            }
+        }
+        final long[] values = new long[tasks.length];
+        boolean timeout = false;
+        for (int color = 0;  color < tasks.length;  ++color) {
+            if (null != tasks[color]) {
+                try {
+                    values[color] = tasks[color].get().longValue();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException)e.getCause();
+                    } else if (e.getCause() instanceof Error) {
+                        throw (Error)e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+                timeout |= (TIMEOUT == values[color]);
+            }
+        }
+        return (timeout ? null : values);
+    }
+
+    /**
+     * the search of the subtree of one move at the root, see {@link LookaheadSolver#searchParallel(Node, int, long)}.
+     */
+    private final class RootTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 4120786314525091618L;
+
+        private final Node node;
+        private final int depth;
+        private final long deadline;
+
+        private RootTask(final Node node, final int depth, final long deadline) {
+            this.node = node;
+            this.depth = depth;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Long compute() {
+            return Long.valueOf(LookaheadSolver.this.evaluate(this.node, this.depth, this.deadline, new Workspace(this.node.flooded.length)));
+        }
+    }
+
+    /**
+     * get the value of the best sequence of moves from this node, up to this depth.
+     * @param node
+     * @param depth the remaining depth
+     * @param deadline System.nanoTime() when the search is aborted
+     * @param work temporary storage of this thread
+     * @return the value; or TIMEOUT if the search has been aborted
+     */
+    private long evaluate(final Node node, final int depth, final long deadline, final Workspace work) {
+        if (ColorAreaSet.isEmpty(node.neighbors)) {
+            return FINISHED;
+        } else if (0 == depth) {
+            if (TIMEOUT == node.value) {
+                node.value = this.strategy.evaluate(node.flooded, node.floodedCells, node.neighbors);
+            }
+            return node.value;
+        } else if (node.valueDepth == depth) {
+            return node.valueOfDepth; // known from the previous search
+        } else if (System.nanoTime() > deadline) {
+            return TIMEOUT;
+        }
+        long result = TIMEOUT;
+        if ((1 == depth) && (null == node.children)) {
+            // the last level: the states are evaluated in the workspace, they are not stored,
+            // because most of them are never used again (this saves a lot of memory and garbage collection)
+            for (int color = 0;  color < this.casByColor.length;  ++color) {
+                final int floodedCells = this.play(node, color, work);
+                if (floodedCells >= 0) {
+                    final long value = (ColorAreaSet.isEmpty(work.neighbors) ? FINISHED - 1
+                            : this.strategy.evaluate(work.flooded, floodedCells, work.neighbors));
+                    result = Math.max(result, value);
+                }
+            }
+        } else {
+            this.expand(node, work);
+            for (final Node child : node.children) {
+                if (null != child) {
+                    long value = this.evaluate(child, depth - 1, deadline, work);
+                    if (TIMEOUT == value) {
+                        return TIMEOUT;
+                    } else if (isFinished(value)) {
+                        --value; // finished: one more move
+                    }
+                    result = Math.max(result, value);
+                }
+            }
+        }
+        node.valueDepth = depth;
+        node.valueOfDepth = result;
+        return result;
+    }
+
+    private static boolean isFinished(final long value) {
+        return value > FINISHED - Integer.MAX_VALUE;
+    }
+
+    /**
+     * create the children of this node, if that has not been done yet.
+     * @param node
+     * @param work temporary storage of this thread
+     */
+    private void expand(final Node node, final Workspace work) {
+        if (null != node.children) {
+            return;
+        }
+        final Node[] children = new Node[this.casByColor.length];
+        for (int color = 0;  color < children.length;  ++color) {
+            final int floodedCells = this.play(node, color, work);
+            if (floodedCells >= 0) {
+                children[color] = new Node(ColorAreaSet.constructor(work.flooded), ColorAreaSet.constructor(work.neighbors), floodedCells);
+            }
+        }
+        node.children = children;
+    }
+
+    /**
+     * play one move, and store the new state in the workspace.
+     * @param node the state before the move
+     * @param color
+     * @param work the new state is stored in flooded and neighbors
+     * @return number of flooded cells of the new state; or -1 if the move doesn't flood anything
+     */
+    private int play(final Node node, final int color, final Workspace work) {
+        final long[] casColor = this.casByColor[color];
+        final long[] newAreas = work.newAreas;
+        long any = 0;
+        for (int i = 0;  i < newAreas.length;  ++i) {
+            any |= (newAreas[i] = node.neighbors[i] & casColor[i]);
+        }
+        if (0 == any) {
+            return -1;
+        }
+        ColorAreaSet.copyFrom(work.flooded, node.flooded);
+        ColorAreaSet.copyFrom(work.neighbors, node.neighbors);
+        ColorAreaSet.addAll(work.flooded, newAreas);
+        ColorAreaSet.addAllLookup(work.neighbors, newAreas, this.idsNeighborColorAreaSets);
+        ColorAreaSet.removeAll(work.neighbors, work.flooded);
+        int floodedCells = node.floodedCells;
+        for (int i = 0;  i < newAreas.length;  ++i) {
+            long buf = newAreas[i];
+            while (0 != buf) {
+                final long l1b = buf & -buf;  // Long.lowestOneBit(buf)
+                floodedCells += this.idsMemberSize[(i << 6) + Long.numberOfTrailingZeros(l1b)];
+                buf ^= l1b;
+            }
+        }
+        return floodedCells;
+    }
+
+    /**
+     * temporary storage, one for each thread.
+     */
+    private static final class Workspace {
+        private final long[] newAreas, flooded, neighbors;
+
+        private Workspace(final int length) {
+            this.newAreas = new long[length];
+            this.flooded = new long[length];
+            this.neighbors = new long[length];
+        }
+    }
+
+    /**
+     * a state in the search tree.
+     */
+    private static final class Node {
+        private final long[] flooded, neighbors;
+        private final int floodedCells;
+        private Node[] children = null; // indexed by color, null = no move of this color
+        private long value = TIMEOUT; // the value from the strategy, TIMEOUT = not known yet
+        private int valueDepth = -1; // the depth of valueOfDepth
+        private long valueOfDepth; // the value of the best sequence of moves up to valueDepth
+
+        private Node(final long[] flooded, final long[] neighbors, final int floodedCells) {
+            this.flooded = flooded;
+            this.neighbors = neighbors;
+            this.floodedCells = floodedCells;
+        }
+    }
+}
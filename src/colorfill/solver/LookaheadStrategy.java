@@ -0,0 +1,40 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+/**
+ * a strategy for the lookahead solver.
+ */
+public interface LookaheadStrategy extends Strategy {
+
+    /**
+     * evaluate a state at the horizon of the lookahead search, that is not finished yet.
+     * (this may be called by several threads at the same time)
+     * @param flooded the flooded color areas
+     * @param floodedCells number of flooded cells
+     * @param neighbors the neighbor color areas of the flooded area
+     * @return the value of the state, greater is better
+     */
+    public long evaluate(long[] flooded, int floodedCells, long[] neighbors);
+
+    /**
+     * get some info from the strategy, like statistics after solver has finished.
+     * @return some info, may be null or empty if the particular strategy has nothing to say.
+     */
+    public String getInfo();
+}
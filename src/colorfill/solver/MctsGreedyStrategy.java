@@ -0,0 +1,65 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import java.util.Random;
+
+import colorfill.model.Board;
+
+/**
+ * a specific strategy for the Monte Carlo tree search (MCTS) solver.
+ * it's a randomized version of DfsGreedyStrategy and DfsGreedyNextStrategy:
+ * <p>
+ * 1) colors that can be completely flooded in the next move.
+ * <p>
+ * 2) otherwise, with a small probability any color of the neighbors,
+ * else the colors that contain the maximum number of member cells,
+ * or the colors that have the maximum number of new neighbor member cells (each one half of the time).
+ */
+public class MctsGreedyStrategy implements MctsStrategy {
+
+    private static final double RANDOM_MOVE_PROBABILITY = 0.1; // CONFIGURE THIS
+
+    public MctsGreedyStrategy(final Board board) {
+        // nothing to do here
+    }
+
+    @Override
+    public int selectColors(final long[] flooded,
+            final ColorAreaGroup notFlooded,
+            final ColorAreaGroup neighbors,
+            final Random random) {
+        int result = neighbors.getColorsCompleted(notFlooded);
+        if (0 == result) {
+            final double r = random.nextDouble();
+            if (r < RANDOM_MOVE_PROBABILITY) {
+                result = neighbors.getColorsNotEmpty();
+            } else if (r < (1.0 + RANDOM_MOVE_PROBABILITY) / 2) {
+                result = neighbors.getColorsMaxMembers(flooded);
+            } else {
+                result = neighbors.getColorsMaxNextNeighbors(flooded);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getInfo() {
+        return null; // no info available
+    }
+}
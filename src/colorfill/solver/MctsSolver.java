@@ -0,0 +1,429 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import colorfill.model.Board;
+import colorfill.model.ColorArea;
+import colorfill.model.ColorAreaSet;
+
+/**
+ * a solver implementation that performs a Monte Carlo tree search (MCTS).
+ * <p>
+ * each iteration selects a path in the search tree using UCB1 (upper confidence bound),
+ * adds one new node, and then plays the game to the end using the randomized strategy (the playout).
+ * the number of moves of the playout is the result, which is propagated back along the path.
+ * a color that can be completely flooded in the next move is the only move that is searched at this node.
+ * <p>
+ * this is an anytime solver: it runs until the time budget is used up, see {@link #setTimeBudget(int)},
+ * and it keeps the best solution of all playouts. when it's interrupted, execute() throws
+ * InterruptedException, but the best solution found so far is still available from getSolution().
+ * <p>
+ * optionally, the search runs in parallel (root parallelization), see {@link #setParallel(boolean)}.
+ */
+public class MctsSolver extends AbstractSolver {
+
+    private static final double EXPLORATION = 0.5; // the constant of the UCB1 formula  CONFIGURE THIS
+    private static final long RANDOM_SEED = 0x5deece66dL; // the seed of the first task, so a sequential search is repeatable with a fixed number of iterations
+
+    private Class<? extends MctsStrategy> strategyClass = MctsGreedyStrategy.class; // default
+    private long timeBudget = 2L * 1000000000L; // nanoseconds  CONFIGURE THIS
+    private int maxIterations = Integer.MAX_VALUE; // CONFIGURE THIS
+    private boolean parallel = false; // CONFIGURE THIS
+
+    private long numIterations, numNodes; // for info only
+    private String strategyInfo;
+
+    /**
+     * construct a new solver for this Board.
+     * @param board the problem to be solved
+     */
+    public MctsSolver(final Board board) {
+        super(board);
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.Solver#setStrategy(java.lang.Class)
+     */
+    @Override
+    public void setStrategy(final Class<? extends Strategy> strategyClass) {
+        if (false == MctsStrategy.class.isAssignableFrom(strategyClass)) {
+            throw new IllegalArgumentException(
+                    "unsupported strategy class " + strategyClass.getName()
+                    + "! " + this.getClass().getSimpleName() + " supports " + MctsStrategy.class.getSimpleName() + " only.");
+        }
+        this.strategyClass = strategyClass.asSubclass(MctsStrategy.class);
+    }
+
+    /**
+     * set the time budget of the search.
+     * @param millis milliseconds (default 2000)
+     */
+    public void setTimeBudget(final int millis) {
+        this.timeBudget = Math.max(0, millis) * 1000000L;
+    }
+
+    /**
+     * set the maximum number of iterations of the search, of each task in the parallel search.
+     * the search stops when the time budget is used up, or when the number of iterations is reached.
+     * @param maxIterations at least 1 (default: no limit)
+     */
+    public void setMaxIterations(final int maxIterations) {
+        this.maxIterations = Math.max(1, maxIterations);
+    }
+
+    /**
+     * select the parallel search.
+     * <p>
+     * the search runs as separate tasks in the common ForkJoinPool, one for each processor.
+     * each task has its own search tree and random numbers (root parallelization),
+     * and they all share the best solution. this is not repeatable.
+     * @param parallel true = parallel search, false = sequential search (default)
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.Solver#getSolverName()
+     */
+    @Override
+    public String getSolverName() {
+        return this.strategyClass.getSimpleName();
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.Solver#getSolverInfo()
+     */
+    @Override
+    public String getSolverInfo() {
+        return this.getSolverName() + " iterations=" + this.numIterations + " nodes=" + this.numNodes
+                + ((null == this.strategyInfo) || this.strategyInfo.isEmpty() ? "" : " " + this.strategyInfo);
+    }
+
+    private MctsStrategy makeStrategy() {
+        try {
+            return this.strategyClass.getConstructor(Board.class).newInstance(this.board);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new IllegalArgumentException(
+                    "unsupported strategy class " + this.strategyClass.getName(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(
+                    "unsupported strategy class " + this.strategyClass.getName(), e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see colorfill.solver.AbstractSolver#executeInternal(int)
+     */
+    @Override
+    protected void executeInternal(final int startPos) throws InterruptedException {
+        this.numIterations = 0;
+        this.numNodes = 0;
+        this.strategyInfo = null;
+        final long deadline = System.nanoTime() + this.timeBudget;
+        final ColorArea startCa = this.board.getColorArea4Cell(startPos);
+        if (this.parallel) {
+            final AtomicBoolean cancelled = new AtomicBoolean(false);
+            final List<MctsTask> tasks = new ArrayList<MctsTask>();
+            for (int i = 0;  i < Runtime.getRuntime().availableProcessors();  ++i) {
+                tasks.add(new MctsTask(startCa, deadline, RANDOM_SEED + i, cancelled));
+            }
+            this.executeParallel(tasks, cancelled);
+        } else {
+            new MctsTask(startCa, deadline, RANDOM_SEED, null).search();
+        }
+    }
+
+    /**
+     * run the parallel search, and wait until it's finished.
+     * @param tasks
+     * @param cancelled
+     * @throws InterruptedException
+     */
+    private void executeParallel(final List<MctsTask> tasks, final AtomicBoolean cancelled) throws InterruptedException {
+        // (ForkJoinTask.get() would run some of the tasks in this thread, and then it can't be interrupted)
+        final CompletableFuture<Void> future = CompletableFuture.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                RecursiveAction.invokeAll(tasks);
+            }
+        }, ForkJoinPool.commonPool());
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            cancelled.set(true); // stop all tasks
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error)e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * add the solution, if it's shorter than the best solution.
+     * (in parallel mode, this is called by all tasks)
+     * @return size of the best solution
+     */
+    private synchronized int addSolution(final byte[] moves, final int numMoves) {
+        if (numMoves < this.solutionSize) {
+            this.addSolution(Arrays.copyOf(moves, numMoves));
+        }
+        return this.solutionSize;
+    }
+
+    /**
+     * add the statistics of a task.
+     * (in parallel mode, this is called by all tasks)
+     */
+    private synchronized void addInfo(final long numIterations, final long numNodes, final String strategyInfo) {
+        this.numIterations += numIterations;
+        this.numNodes += numNodes;
+        if ((null != strategyInfo) && (false == strategyInfo.isEmpty())) {
+            this.strategyInfo = strategyInfo;
+        }
+    }
+
+
+    /**
+     * a node of the search tree.
+     * the state of the game is not stored, it's played again from the root in each iteration.
+     */
+    private static final class Node {
+        private final Node[] children; // indexed by color, null = not expanded
+        private int untriedColors = -1; // the colors that have not been expanded yet; -1 = not known yet
+        private int visits = 0;
+        private long sumMoves = 0; // the sum of the results (number of moves) of all playouts through this node
+
+        private Node(final int numColors) {
+            this.children = new Node[numColors];
+        }
+    }
+
+
+    /**
+     * the search of one task, with its own search tree.
+     * <p>
+     * in the sequential search, one instance of this class does the whole search.
+     * in the parallel search, each task has its own search tree.
+     */
+    private final class MctsTask extends RecursiveAction {
+        private static final long serialVersionUID = 2936046581034751290L;
+
+        private final ColorArea startCa;
+        private final long deadline;
+        private final Random random;
+        private final AtomicBoolean cancelled; // parallel search: stop all tasks; null otherwise
+        private final MctsStrategy strategy;
+
+        // the state of the game, played again in each iteration
+        private final long[] allFlooded;
+        private final ColorAreaGroup notFlooded, neighbors;
+        private final ColorAreaGroup startNotFlooded, startNeighbors;
+        private final long[] flooded;
+        private final ColorAreaSet.Iterator iter = new ColorAreaSet.Iterator();
+        private final byte[] moves;
+        private int numMoves;
+
+        private final Node[] path; // the nodes selected in this iteration, indexed by number of moves
+        private final int numColors;
+        private int bestMoves = Integer.MAX_VALUE, worstMoves = 0; // the results of the playouts of this task
+        private long numNodes = 0;
+
+        private MctsTask(final ColorArea startCa, final long deadline, final long seed, final AtomicBoolean cancelled) {
+            final Board board = MctsSolver.this.board;
+            this.startCa = startCa;
+            this.deadline = deadline;
+            this.random = new Random(seed);
+            this.cancelled = cancelled;
+            this.strategy = MctsSolver.this.makeStrategy();
+            this.numColors = board.getNumColors();
+            this.allFlooded = ColorAreaSet.constructor(board);
+            this.flooded = ColorAreaSet.constructor(board);
+            this.notFlooded = new ColorAreaGroup(board);
+            this.neighbors = new ColorAreaGroup(board);
+            ColorAreaSet.add(this.allFlooded, startCa);
+            this.startNotFlooded = new ColorAreaGroup(board);
+            this.startNotFlooded.addAll(board.getColorAreasArray(), this.allFlooded);
+            this.startNeighbors = new ColorAreaGroup(board);
+            this.startNeighbors.addAll(startCa.getNeighborsArray(), this.allFlooded);
+            this.moves = new byte[getMaxSearchDepth(board)];
+            this.path = new Node[this.moves.length + 1];
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                this.search();
+            } catch (InterruptedException e) {
+                // the search has been cancelled, see executeParallel()
+            }
+        }
+
+        /**
+         * the loop of the search, until the time budget is used up.
+         * @throws InterruptedException
+         */
+        private void search() throws InterruptedException {
+            final Node root = new Node(this.numColors);
+            ++this.numNodes;
+            long numIterations = 0;
+            try {
+                do {
+                    if (null == this.cancelled ? Thread.interrupted() : this.cancelled.get()) { throw new InterruptedException(); }
+                    this.iterate(root);
+                    ++numIterations;
+                } while ((numIterations < MctsSolver.this.maxIterations) && (System.nanoTime() < this.deadline));
+            } finally {
+                MctsSolver.this.addInfo(numIterations, this.numNodes, this.strategy.getInfo());
+            }
+        }
+
+        /**
+         * one iteration: selection, expansion, playout and backpropagation.
+         * @param root
+         */
+        private void iterate(final Node root) {
+            ColorAreaSet.clear(this.allFlooded);
+            ColorAreaSet.add(this.allFlooded, this.startCa);
+            this.notFlooded.copyFrom(this.startNotFlooded, -1); // -1 = copy all colors
+            this.neighbors.copyFrom(this.startNeighbors, -1);
+            this.numMoves = 0;
+
+            // selection and expansion
+            Node node = root;
+            this.path[0] = root;
+            while (false == this.neighbors.isEmpty()) {
+                if (-1 == node.untriedColors) {
+                    node.untriedColors = this.neighbors.getColorsCompleted(this.notFlooded);
+                    if (0 == node.untriedColors) {
+                        node.untriedColors = this.neighbors.getColorsNotEmpty();
+                    }
+                }
+                final byte color;
+                if (0 != node.untriedColors) {
+                    color = this.selectRandom(node.untriedColors);
+                    node.untriedColors &= ~(1 << color);
+                    node.children[color] = new Node(this.numColors);
+                    ++this.numNodes;
+                    node = node.children[color];
+                    this.play(color);
+                    this.path[this.numMoves] = node;
+                    break; // expanded one node
+                }
+                color = this.selectUcb(node);
+                node = node.children[color];
+                this.play(color);
+                this.path[this.numMoves] = node;
+            }
+            final int numPathNodes = this.numMoves + 1;
+
+            // playout
+            while (false == this.neighbors.isEmpty()) {
+                final int colorsNotEmpty = this.neighbors.getColorsNotEmpty();
+                int colors = this.strategy.selectColors(this.allFlooded, this.notFlooded, this.neighbors, this.random) & colorsNotEmpty;
+                if (0 == colors) {
+                    colors = colorsNotEmpty;
+                }
+                this.play(this.selectRandom(colors));
+            }
+            if (this.numMoves < this.bestMoves) {
+                this.bestMoves = MctsSolver.this.addSolution(this.moves, this.numMoves);
+            }
+            this.worstMoves = Math.max(this.worstMoves, this.numMoves);
+
+            // backpropagation
+            for (int i = 0;  i < numPathNodes;  ++i) {
+                final Node n = this.path[i];
+                ++n.visits;
+                n.sumMoves += this.numMoves;
+            }
+        }
+
+        /**
+         * select the child with the best upper confidence bound (UCB1).
+         * the results are scaled to the range 0...1, using the best and worst results of this task.
+         * @param node all of its children are expanded
+         * @return the color of the selected child
+         */
+        private byte selectUcb(final Node node) {
+            final double range = Math.max(1, this.worstMoves - this.bestMoves);
+            final double logVisits = Math.log(node.visits);
+            byte result = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (byte color = 0;  color < this.numColors;  ++color) {
+                final Node child = node.children[color];
+                if (null != child) {
+                    final double mean = (double)child.sumMoves / child.visits;
+                    final double value = (this.worstMoves - mean) / range + EXPLORATION * Math.sqrt(logVisits / child.visits);
+                    if (bestValue < value) {
+                        bestValue = value;
+                        result = color;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * select one of the colors at random.
+         * @param colors not empty
+         * @return
+         */
+        private byte selectRandom(int colors) {
+            for (int i = this.random.nextInt(Integer.bitCount(colors));  i > 0;  --i) {
+                colors &= colors - 1; // clear lowest one bit
+            }
+            return (byte)Integer.numberOfTrailingZeros(colors);
+        }
+
+        /**
+         * play one move: flood this color and add the new neighbors.
+         * @param color
+         */
+        private void play(final byte color) {
+            this.neighbors.moveColorTo(color, this.flooded);
+            this.notFlooded.removeAllColor(this.flooded, color);
+            ColorAreaSet.addAll(this.allFlooded, this.flooded);
+            final Board board = MctsSolver.this.board;
+            this.iter.init(this.flooded);
+            int nextId;
+            while ((nextId = this.iter.nextOrNegative()) >= 0) {
+                this.neighbors.addAll(board.getColorArea4Id(nextId).getNeighborsArray(), this.allFlooded);
+            }
+            this.moves[this.numMoves++] = color;
+        }
+    }
+}
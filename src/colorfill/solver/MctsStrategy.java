@@ -0,0 +1,49 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import java.util.Random;
+
+/**
+ * a strategy for the Monte Carlo tree search (MCTS) solver.
+ * it's the policy of the random playouts (rollouts).
+ */
+public interface MctsStrategy extends Strategy {
+
+    /**
+     * select one or more colors (from neighbors) for the next move of the playout.
+     * the solver selects one of them at random.
+     * (each thread of the solver has its own strategy instance)
+     * 
+     * @param flooded the flooded area of the board
+     * @param notFlooded the area of the board not flooded yet
+     * @param neighbors the neighbor areas of the flooded area
+     * @param random the random number generator of this playout
+     * @return the colors to be used for the next move, not empty
+     */
+    public int selectColors(long[] flooded,
+            ColorAreaGroup notFlooded,
+            ColorAreaGroup neighbors,
+            Random random);
+
+    /**
+     * get some info from the strategy, like statistics after solver has finished.
+     * @return some info, may be null or empty if the particular strategy has nothing to say.
+     */
+    public String getInfo();
+}
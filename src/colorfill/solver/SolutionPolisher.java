@@ -0,0 +1,269 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import java.util.Arrays;
+
+import colorfill.model.Board;
+import colorfill.model.ColorAreaSet;
+
+/**
+ * try to make a solution shorter by some local changes (polishing).
+ * <p>
+ * the changes are: dropping one move, swapping two adjacent moves (and then dropping one move),
+ * and replacing a short window of moves by a shorter sequence of moves, which is found by a small
+ * exact search (iterative deepening) from the state before the window. the new sequence must flood
+ * at least the same color areas as the window, so the rest of the solution still works.
+ * <p>
+ * each candidate is checked by replaying it on ColorAreaSets, which also drops the moves that
+ * don't flood anything, and stops when the board is completely flooded. the first candidate
+ * that is shorter is accepted, and then everything is tried again until there is no improvement.
+ */
+final class SolutionPolisher {
+
+    private static final int MAX_WINDOW_SIZE = 6; // maximum number of moves in a window that is replaced  CONFIGURE THIS
+
+    private final long[][] idsNeighborColorAreaSets;
+    private final long[][] casByColor; // the color areas of each color, indexed by color
+    private final int startId;
+    private final long[] newAreas;
+
+    // the states after each move of the current solution, see replay()
+    private long[][] flooded = new long[0][];
+    private long[][] neighbors = new long[0][];
+
+    // the states of the window search, indexed by depth
+    private final long[][] searchFlooded = new long[MAX_WINDOW_SIZE][];
+    private final long[][] searchNeighbors = new long[MAX_WINDOW_SIZE][];
+    private final byte[] searchMoves = new byte[MAX_WINDOW_SIZE];
+    private final long[] searchMissing;
+
+    /**
+     * constructor
+     * @param board
+     * @param startPos position of the board cell where the color flood starts (0 == top left)
+     */
+    SolutionPolisher(final Board board, final int startPos) {
+        this.idsNeighborColorAreaSets = board.getNeighborColorAreaSet4IdArray();
+        this.casByColor = new long[board.getNumColors()][];
+        for (int color = 0;  color < this.casByColor.length;  ++color) {
+            this.casByColor[color] = board.getCasByColorBitsArray()[1 << color];
+        }
+        this.startId = board.getColorArea4Cell(startPos).getId();
+        this.newAreas = ColorAreaSet.constructor(board);
+        this.searchMissing = ColorAreaSet.constructor(board);
+        for (int depth = 0;  depth < MAX_WINDOW_SIZE;  ++depth) {
+            this.searchFlooded[depth] = ColorAreaSet.constructor(board);
+            this.searchNeighbors[depth] = ColorAreaSet.constructor(board);
+        }
+    }
+
+    /**
+     * try to make the solution shorter.
+     * @param solution the steps of a valid solution
+     * @return the shortest solution that has been found, may be the same as the input
+     * @throws InterruptedException
+     */
+    byte[] polish(final byte[] solution) throws InterruptedException {
+        byte[] best = this.replay(solution);
+        if (null == best) {
+            return solution; // not a valid solution
+        }
+        byte[] candidate;
+        while (null != (candidate = this.findShorter(best))) {
+            best = candidate;
+        }
+        return best;
+    }
+
+    /**
+     * try all changes of the solution, and return the first one that is shorter.
+     * @param solution must be the result of replay()
+     * @return shorter solution, or null if none has been found
+     * @throws InterruptedException
+     */
+    private byte[] findShorter(final byte[] solution) throws InterruptedException {
+        final int length = solution.length;
+        byte[] candidate;
+        // drop one move
+        for (int i = 0;  i < length;  ++i) {
+            if (null != (candidate = this.replayShorter(drop(solution, i), length))) {
+                return candidate;
+            }
+        }
+        // swap two adjacent moves, and then drop one move
+        for (int i = 0;  i < length - 1;  ++i) {
+            if (Thread.interrupted()) { throw new InterruptedException(); }
+            final byte[] swapped = solution.clone();
+            swapped[i] = solution[i + 1];
+            swapped[i + 1] = solution[i];
+            if (null != (candidate = this.replayShorter(swapped, length))) {
+                return candidate;
+            }
+            for (int j = 0;  j < length;  ++j) {
+                if (null != (candidate = this.replayShorter(drop(swapped, j), length))) {
+                    return candidate;
+                }
+            }
+        }
+        // replace a window by a shorter sequence of moves
+        this.replay(solution); // the states before and after each move, used as start and target of the search
+        for (int window = 2;  window <= MAX_WINDOW_SIZE;  ++window) {
+            for (int start = 0;  start + window <= length;  ++start) {
+                if (Thread.interrupted()) { throw new InterruptedException(); }
+                final int numMoves = this.searchWindow(this.flooded[start], this.neighbors[start], this.flooded[start + window], window - 1);
+                if (numMoves >= 0) {
+                    candidate = new byte[length - window + numMoves];
+                    System.arraycopy(solution, 0, candidate, 0, start);
+                    System.arraycopy(this.searchMoves, 0, candidate, start, numMoves);
+                    System.arraycopy(solution, start + window, candidate, start + numMoves, length - start - window);
+                    if (null != (candidate = this.replayShorter(candidate, length))) {
+                        return candidate;
+                    }
+                    this.replay(solution); // restore the states
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] drop(final byte[] solution, final int index) {
+        final byte[] result = new byte[solution.length - 1];
+        System.arraycopy(solution, 0, result, 0, index);
+        System.arraycopy(solution, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private byte[] replayShorter(final byte[] candidate, final int length) {
+        final byte[] result = this.replay(candidate);
+        return ((null != result) && (result.length < length) ? result : null);
+    }
+
+    /**
+     * play the moves, and store the state after each move.
+     * the moves that don't flood anything are dropped, and the moves after the board is completely flooded.
+     * @param moves
+     * @return the moves that have been played, or null if the board is not completely flooded
+     */
+    private byte[] replay(final byte[] moves) {
+        if (this.flooded.length <= moves.length) {
+            final int oldLength = this.flooded.length;
+            this.flooded = Arrays.copyOf(this.flooded, moves.length + 1);
+            this.neighbors = Arrays.copyOf(this.neighbors, moves.length + 1);
+            for (int i = oldLength;  i < this.flooded.length;  ++i) {
+                this.flooded[i] = new long[this.newAreas.length];
+                this.neighbors[i] = new long[this.newAreas.length];
+            }
+        }
+        ColorAreaSet.clear(this.flooded[0]);
+        ColorAreaSet.add(this.flooded[0], this.startId);
+        ColorAreaSet.copyFrom(this.neighbors[0], this.idsNeighborColorAreaSets[this.startId]);
+        final byte[] result = new byte[moves.length];
+        int numMoves = 0;
+        for (final byte color : moves) {
+            if (ColorAreaSet.isEmpty(this.neighbors[numMoves])) {
+                break; // finished
+            }
+            ColorAreaSet.copyFrom(this.flooded[numMoves + 1], this.flooded[numMoves]);
+            ColorAreaSet.copyFrom(this.neighbors[numMoves + 1], this.neighbors[numMoves]);
+            if (this.play(this.flooded[numMoves + 1], this.neighbors[numMoves + 1], color)) {
+                result[numMoves++] = color;
+            }
+        }
+        return (ColorAreaSet.isEmpty(this.neighbors[numMoves]) ? Arrays.copyOf(result, numMoves) : null);
+    }
+
+    /**
+     * play one move.
+     * @param flooded the flooded color areas, will be updated
+     * @param neighbors the neighbors of the flooded color areas, will be updated
+     * @param color
+     * @return false if the move doesn't flood anything (then nothing is changed)
+     */
+    private boolean play(final long[] flooded, final long[] neighbors, final byte color) {
+        final long[] casColor = this.casByColor[color];
+        long any = 0;
+        for (int i = 0;  i < this.newAreas.length;  ++i) {
+            any |= (this.newAreas[i] = neighbors[i] & casColor[i]);
+        }
+        if (0 == any) {
+            return false;
+        }
+        ColorAreaSet.addAll(flooded, this.newAreas);
+        ColorAreaSet.addAllLookup(neighbors, this.newAreas, this.idsNeighborColorAreaSets);
+        ColorAreaSet.removeAll(neighbors, flooded);
+        return true;
+    }
+
+    /**
+     * find the shortest sequence of moves, up to maxMoves, that floods at least the target color areas.
+     * @param flooded start state
+     * @param neighbors start state
+     * @param target
+     * @param maxMoves
+     * @return number of moves, stored in searchMoves; or -1 if there is no such sequence
+     */
+    private int searchWindow(final long[] flooded, final long[] neighbors, final long[] target, final int maxMoves) {
+        ColorAreaSet.copyFrom(this.searchFlooded[0], flooded);
+        ColorAreaSet.copyFrom(this.searchNeighbors[0], neighbors);
+        for (int numMoves = this.lowerBound(flooded, target);  numMoves <= maxMoves;  ++numMoves) { // iterative deepening
+            if (this.search(0, numMoves, target)) {
+                return numMoves;
+            }
+        }
+        return -1;
+    }
+
+    private boolean search(final int depth, final int maxDepth, final long[] target) {
+        final long[] flooded = this.searchFlooded[depth];
+        final int lowerBound = this.lowerBound(flooded, target);
+        if (0 == lowerBound) {
+            return true;
+        } else if (depth + lowerBound > maxDepth) {
+            return false;
+        }
+        final long[] neighbors = this.searchNeighbors[depth];
+        for (byte color = 0;  color < this.casByColor.length;  ++color) {
+            ColorAreaSet.copyFrom(this.searchFlooded[depth + 1], flooded);
+            ColorAreaSet.copyFrom(this.searchNeighbors[depth + 1], neighbors);
+            if (this.play(this.searchFlooded[depth + 1], this.searchNeighbors[depth + 1], color)) {
+                this.searchMoves[depth] = color;
+                if (this.search(depth + 1, maxDepth, target)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the number of colors of the target color areas that are not flooded yet.
+     * each of them needs at least one move.
+     */
+    private int lowerBound(final long[] flooded, final long[] target) {
+        ColorAreaSet.copyFrom(this.searchMissing, target);
+        ColorAreaSet.removeAll(this.searchMissing, flooded);
+        int result = 0;
+        for (final long[] casColor : this.casByColor) {
+            if (ColorAreaSet.intersects(this.searchMissing, casColor)) {
+                ++result;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,115 @@
+/*  ColorFill game and solver
+    Copyright (C) 2020 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package colorfill.solver;
+
+import colorfill.model.Board;
+
+/**
+ * the memory of the solvers, which is reused for the next board.
+ * <p>
+ * a thread that solves many boards one after the other (a batch run) keeps one SolverContext,
+ * and gives it to {@link AbstractSolver#createSolver(Class, Board, SolverContext)}.
+ * the solvers then clear the tables of the previous board instead of allocating new ones,
+ * and the tables grow when a board needs more.
+ * <p>
+ * a SolverContext must not be used by more than one solver at the same time,
+ * so each thread needs its own instance.
+ */
+public class SolverContext {
+
+    private AStarSolver.SolutionTree solutionTree = null;
+    private long[] zobristKeys = new long[0];
+    private AStarSolver.HashMapLongArray2Byte map = null;
+    private ColorAreaGroup colorAreaGroup = null;
+    private DfsTranspositionTable transpositionTable = null;
+
+    /**
+     * get the SolutionTree, which keeps its memory blocks from one search to the next.
+     * @return
+     */
+    AStarSolver.SolutionTree getSolutionTree() {
+        if (null == this.solutionTree) {
+            this.solutionTree = new AStarSolver.SolutionTree();
+        }
+        return this.solutionTree;
+    }
+
+    /**
+     * get the random numbers for Zobrist hashing.
+     * (they are created with a constant seed, so a longer array from a previous board can be used)
+     * @param board
+     * @return array of random numbers, indexed by ColorArea ID
+     */
+    long[] getZobristKeys(final Board board) {
+        if (this.zobristKeys.length < board.getColorAreasArray().length) {
+            this.zobristKeys = AStarSolver.HashMapLongArray2Byte.makeZobristKeys(board);
+        }
+        return this.zobristKeys;
+    }
+
+    /**
+     * get an empty map for the closed set of the AStarSolver.
+     * the map of the previous board is cleared and reused, if it has the same key size and mode.
+     * @param board
+     * @param zobristKeys
+     * @param lossy
+     * @param maxValue
+     * @return
+     */
+    AStarSolver.HashMapLongArray2Byte getMap(final Board board, final long[] zobristKeys, final boolean lossy, final int maxValue) {
+        if ((null != this.map) && this.map.isCompatible(board, lossy, maxValue)) {
+            this.map.clear(zobristKeys);
+        } else {
+            this.map = null; // may be large, so release it before the new one is created
+            this.map = new AStarSolver.HashMapLongArray2Byte(board, zobristKeys, lossy, maxValue);
+        }
+        return this.map;
+    }
+
+    /**
+     * get an empty ColorAreaGroup for the neighbors of the DfsSolver.
+     * the ColorAreaGroup of the previous board is cleared and reused, if the board has the same number
+     * of colors and ColorAreaSets of the same size.
+     * @param board
+     * @return
+     */
+    ColorAreaGroup getColorAreaGroup(final Board board) {
+        if ((null != this.colorAreaGroup) && this.colorAreaGroup.isCompatible(board)) {
+            this.colorAreaGroup.reset(board);
+        } else {
+            this.colorAreaGroup = new ColorAreaGroup(board);
+        }
+        return this.colorAreaGroup;
+    }
+
+    /**
+     * get an empty transposition table for the DfsSolver.
+     * the table of the previous board is cleared and reused, if it has the same size.
+     * @param bits the table has 2^bits entries
+     * @return
+     */
+    DfsTranspositionTable getTranspositionTable(final int bits) {
+        if ((null != this.transpositionTable) && (this.transpositionTable.size() == (1 << bits))) {
+            this.transpositionTable.clear();
+        } else {
+            this.transpositionTable = null; // may be large, so release it before the new one is created
+            this.transpositionTable = new DfsTranspositionTable(bits);
+        }
+        return this.transpositionTable;
+    }
+}
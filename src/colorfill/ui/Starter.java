@@ -22,12 +22,19 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import colorfill.model.Board;
 import colorfill.solver.AStarFlolleStrategy;
 import colorfill.solver.AStarPuchertStrategy;
+import colorfill.solver.AStarSolver;
 import colorfill.solver.AbstractSolver;
 import colorfill.solver.DfsDeepStrategy;
 import colorfill.solver.DfsDeeperStrategy;
@@ -36,6 +43,7 @@ import colorfill.solver.DfsGreedyStrategy;
 import colorfill.solver.DfsGreedyNextStrategy;
 import colorfill.solver.Solution;
 import colorfill.solver.Solver;
+import colorfill.solver.SolverContext;
 import colorfill.solver.Strategy;
 
 public class Starter {
@@ -64,6 +72,7 @@ public class Starter {
             }
             break;
         case 3:
+        case 4:
             if ("-benchmark".equals(args[0])) {
                 runBenchmark(args);
             }
@@ -151,8 +160,11 @@ public class Starter {
     }
 
     private static Board makeBoard(final BufferedReader br) throws Exception {
+        return makeBoard(readBoard(br));
+    }
+
+    private static Board makeBoard(final String boardData) {
         Board result = null;
-        final String boardData = readBoard(br);
         if (null != boardData) {
             final int startPos;
             if (19*19 == boardData.length()) {
@@ -183,6 +195,8 @@ public class Starter {
             DfsDeeperStrategy.class,
             AStarFlolleStrategy.class,
             AStarPuchertStrategy.class,
+            //AStarDistanceStrategy.class,
+            //AStarCompositeStrategy.class,
             //DfsExhaustiveStrategy.class,
         };
 
@@ -203,6 +217,7 @@ public class Starter {
                 final PrintWriter pwResults = new PrintWriter(new FileWriter(outputFileName))
             ) {
             int count = 0;
+            final SolverContext solverContext = new SolverContext(); // reused for all boards
             for (;;) {
                 final Board board = makeBoard(brTiles);
                 if (null == board) {
@@ -212,7 +227,7 @@ public class Starter {
                 // run each of the strategies
                 Solution bestSolution = null;
                 for (int strategy = 0;  strategy < STRATEGIES.length;  ++strategy) {
-                    final Solver solver = AbstractSolver.createSolver((Class<Strategy>) STRATEGIES[strategy], board);
+                    final Solver solver = AbstractSolver.createSolver((Class<Strategy>) STRATEGIES[strategy], board, solverContext);
                     final long nanoStart = System.nanoTime();
                     final int numSteps = solver.execute(board.getStartPos(), DfsExhaustiveStrategy.class.equals(STRATEGIES[strategy]) ? bestSolution : null);
                     final long nanoEnd = System.nanoTime();
@@ -329,6 +344,7 @@ public class Starter {
             }
 
             // read input file and solve boards and write to output file
+            final SolverContext solverContext = new SolverContext(); // reused for all boards
             main_loop:
                 for (;;) {
                     final Board board = makeBoard(brBoards);
@@ -341,7 +357,7 @@ public class Starter {
                     Solution bestSolution = null;
                     // don't run DfsExhaustiveStrategy yet
                     for (int strategy = 0;  strategy < STRATEGIES.length - 1;  ++strategy) {
-                        final Solver solver = AbstractSolver.createSolver(STRATEGIES[strategy].asSubclass(Strategy.class), board);
+                        final Solver solver = AbstractSolver.createSolver(STRATEGIES[strategy].asSubclass(Strategy.class), board, solverContext);
                         final long nanoStart = System.nanoTime();
                         solver.execute(board.getStartPos(), null);
                         final long nanoEnd = System.nanoTime();
@@ -362,7 +378,7 @@ public class Starter {
                     OutOfMemoryError oomError = null;
                     {  // run DfsExhaustiveStrategy only
                         final int strategy = STRATEGIES.length - 1;
-                        final Solver solver = AbstractSolver.createSolver(STRATEGIES[strategy].asSubclass(Strategy.class), board);
+                        final Solver solver = AbstractSolver.createSolver(STRATEGIES[strategy].asSubclass(Strategy.class), board, solverContext);
                         final long nanoStart = System.nanoTime();
                         try {
                             solver.execute(board.getStartPos(), DfsExhaustiveStrategy.class.equals(STRATEGIES[strategy]) ? bestSolution : null);
@@ -463,6 +479,7 @@ public class Starter {
             final List<Integer> allMilliSeconds = new ArrayList<Integer>();
             int sessionStart = count + 1;
             int sessionSteps = 0;
+            final SolverContext solverContext = new SolverContext(); // reused for all boards
             main_loop:
                 for (;;) {
                     final Board board = makeBoard(brBoards);
@@ -470,7 +487,7 @@ public class Starter {
                         break; // end of input file !?
                     }
                     ++count;
-                    final Solver solver = AbstractSolver.createSolver(STRATEGIES[0].asSubclass(Strategy.class), board);
+                    final Solver solver = AbstractSolver.createSolver(STRATEGIES[0].asSubclass(Strategy.class), board, solverContext);
                     final long nanoStart = System.nanoTime();
                     solver.execute(board.getStartPos(), null);
                     final long nanoEnd = System.nanoTime();
@@ -530,6 +547,7 @@ public class Starter {
         } else {
             STRATEGY = Class.forName("colorfill.solver." + args[2]);
         }
+        final String compositeSpec = (args.length == 4 ? args[3] : null); // for example "max(AStarDistanceStrategy, AStarFlolleStrategy)"
         final String solverName = AbstractSolver.getSolverName(STRATEGY.asSubclass(Strategy.class));
         System.out.println("running benchmark of solver strategy " + solverName);
         System.out.println("reading  input file: " + inputFileName);
@@ -542,6 +560,7 @@ public class Starter {
             long totalNanos = 0;
             // read input file and solve boards and write to output file
             final List<Integer> allMilliSeconds = new ArrayList<Integer>();
+            final SolverContext solverContext = new SolverContext(); // reused for all boards
             for (;;) {
                 final long nanoStart = System.nanoTime();
                 final Board board = makeBoard(brBoards);
@@ -549,7 +568,10 @@ public class Starter {
                     break; // end of input file !?
                 }
                 ++count;
-                final Solver solver = AbstractSolver.createSolver(STRATEGY.asSubclass(Strategy.class), board);
+                final Solver solver = AbstractSolver.createSolver(STRATEGY.asSubclass(Strategy.class), board, solverContext);
+                if ((null != compositeSpec) && (solver instanceof AStarSolver)) {
+                    ((AStarSolver)solver).setCompositeSpec(compositeSpec);
+                }
                 solver.execute(board.getStartPos(), null);
                 final Solution solution = solver.getSolution();
                 totalSteps += solution.getNumSteps();
@@ -589,6 +611,9 @@ public class Starter {
      * read the two files and check if the boards in the first file are solved
      * by the solutions in the second file.
      * works for both: Programming Challenge 19 and Code Golf 26232
+     * <p>
+     * the checks run in parallel on all available processors; the boards are read and the
+     * results are reported in the order of the input files, so the output is deterministic.
      * 
      * @param inputFileNameBoards
      * @param inputFileNameSolutions
@@ -598,32 +623,53 @@ public class Starter {
         System.out.println("running solution validator");
         System.out.println("reading input file    Boards: " + inputFileNameBoards);
         System.out.println("reading input file Solutions: " + inputFileNameSolutions);
+        final int numThreads = Runtime.getRuntime().availableProcessors();
+        final int batchSize = 250; // number of boards checked by one task
+        final int maxPending = numThreads * 4; // number of tasks submitted but not yet reported
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
         try (   final BufferedReader brBoards = new BufferedReader(new FileReader(inputFileNameBoards));
                 final BufferedReader brSolutions= new BufferedReader(new FileReader(inputFileNameSolutions))
             ) {
             final int[] countSolutionLengths = new int[1000]; // arbitrary limit
             int countOK = 0, countFAIL = 0, totalSolutionSteps = 0;
-            for (;;) {
-                final Board board = makeBoard(brBoards);
-                final String solutionStr = brSolutions.readLine();
-                if ((null == board) || (null == solutionStr)) {
-                    break;
+            final Deque<Future<String[]>> pending = new ArrayDeque<Future<String[]>>();
+            for (boolean endOfInput = false;  false == endOfInput;  ) {
+                final List<String> boardsData = new ArrayList<String>(batchSize);
+                final List<String> solutionsStr = new ArrayList<String>(batchSize);
+                while (boardsData.size() < batchSize) {
+                    final String boardData = readBoard(brBoards);
+                    final String solutionStr = brSolutions.readLine();
+                    if ((null == boardData) || (null == solutionStr)) {
+                        endOfInput = true;
+                        break;
+                    }
+                    boardsData.add(boardData);
+                    solutionsStr.add(solutionStr);
+                    ++countSolutionLengths[solutionStr.length()];
+                    totalSolutionSteps += solutionStr.length();
                 }
-                ++countSolutionLengths[solutionStr.length()];
-                totalSolutionSteps += solutionStr.length();
-                final String checkResult = board.checkSolution(solutionStr, board.getStartPos());
-                if (checkResult.isEmpty()) {
-                    ++countOK;
-                } else {
-                    ++countFAIL;
-                    System.out.println(countOK + countFAIL);
-                    System.out.println(board.toStringCells());
-                    System.out.println(board);
-                    System.out.println(checkResult);
-                    System.out.println();
+                if (false == boardsData.isEmpty()) {
+                    pending.add(executor.submit(new Callable<String[]>() {
+                        @Override
+                        public String[] call() throws Exception {
+                            return validateBatch(boardsData, solutionsStr);
+                        }
+                    }));
                 }
-                if (0 == (countOK + countFAIL) % 1000) {
-                    System.out.println("checked " + (countOK + countFAIL) + " ...");
+                // report the results in input order
+                while ((false == pending.isEmpty()) && (endOfInput || (pending.size() >= maxPending))) {
+                    for (final String checkResult : pending.poll().get()) {
+                        if (checkResult.isEmpty()) {
+                            ++countOK;
+                        } else {
+                            ++countFAIL;
+                            System.out.println(countOK + countFAIL);
+                            System.out.println(checkResult);
+                        }
+                        if (0 == (countOK + countFAIL) % 1000) {
+                            System.out.println("checked " + (countOK + countFAIL) + " ...");
+                        }
+                    }
                 }
             }
             System.out.println("check finished:  total=" + (countOK + countFAIL) + " checkOK=" + countOK + " checkFAIL=" + countFAIL);
@@ -648,10 +694,28 @@ public class Starter {
                             );
                 }
             }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-
+    /**
+     * check the solutions of a batch of boards. (runs in a worker thread of the validator)
+     * @return for each board: an empty string if the check is successful, or else the error report
+     */
+    private static String[] validateBatch(final List<String> boardsData, final List<String> solutionsStr) {
+        final String[] result = new String[boardsData.size()];
+        for (int i = 0;  i < result.length;  ++i) {
+            final Board board = makeBoard(boardsData.get(i));
+            final String checkResult = board.checkSolution(solutionsStr.get(i), board.getStartPos());
+            if (checkResult.isEmpty()) {
+                result[i] = checkResult;
+            } else {
+                result[i] = board.toStringCells() + "\n" + board + "\n" + checkResult + "\n";
+            }
+        }
+        return result;
+    }
 
     public static String padRight(String s, int n) {
         return String.format("%1$-" + n + "s", s);